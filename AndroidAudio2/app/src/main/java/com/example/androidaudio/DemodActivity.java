@@ -26,30 +26,43 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.example.androidaudio.audio.AudioUtils;
+import com.example.androidaudio.audio.PcmFile;
+import com.example.androidaudio.audio.ShortRingBuffer;
+import com.example.androidaudio.audio.SignalTrace;
+import com.example.androidaudio.audio.WavWriter;
 import com.example.androidaudio.signal.BFSKDemodulator;
 import com.example.androidaudio.signal.BFSKModulator;
+import com.example.androidaudio.signal.BFSKStreamDemodulator;
+import com.example.androidaudio.signal.DemodMetrics;
+import com.example.androidaudio.signal.DemodStats;
+import com.example.androidaudio.signal.Demodulator;
+import com.example.androidaudio.signal.FecCodec;
+import com.example.androidaudio.signal.MFSKDemodulator;
+import com.example.androidaudio.signal.MFSKModulator;
+import com.example.androidaudio.signal.OFDMDemodulator;
+import com.example.androidaudio.signal.Samples;
+import com.example.androidaudio.signal.Spectrum;
+import com.example.androidaudio.signal.SpectrumCache;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
-import java.util.Arrays;
+import java.nio.ShortBuffer;
+import java.util.Collections;
+import java.util.List;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
 
 
 public class DemodActivity extends AppCompatActivity {
-    private static final String PCM_FILE_NAME = "record.pcm";
     private static final String WAVE_FILE_NAME = "record.wav";
     private static final int SAMPLE_RATE = 48000;
+    private static final int MAX_PAYLOAD = 256;
+    private static final int RING_CAPACITY = 4 * SAMPLE_RATE;  // 约4秒
+    // 录音的频谱，换符号时间等参数重新解码同一段录音时复用；1分钟的录音约占0.5MB
+    private static final SpectrumCache SPECTRA = new SpectrumCache(32 << 20);
 
     @BindView(R.id.record_btn)
     Button recordBtn;
@@ -70,6 +83,10 @@ public class DemodActivity extends AppCompatActivity {
 
     private Boolean recordStatus = false;
     private Boolean playStatus = false;
+    // 上一次解码的参数和显示的结果，参数和录音都没变时直接显示
+    private String lastDecodeKey;
+    private String lastMsg, lastCode;
+    private double lastError;
 
     @Override
     protected void onCreate(Bundle savedInstanceState){
@@ -90,7 +107,7 @@ public class DemodActivity extends AppCompatActivity {
         startActivity(intent);
     }
 
-    public void onRecordBtnClicked(View view) throws FileNotFoundException {
+    public void onRecordBtnClicked(View view) {
         if (recordStatus) return;
 
         recordStatus = true;
@@ -102,19 +119,12 @@ public class DemodActivity extends AppCompatActivity {
         Toast.makeText(this, R.string.start_record_help, Toast.LENGTH_SHORT).show();
 
 
-        File pcmFile = new File(this.getCacheDir(), PCM_FILE_NAME);
-        Log.i("AudioUnit", "PCM file " + pcmFile.getAbsolutePath());
-        if (pcmFile.exists()) {
-            pcmFile.delete();
-        }
-
         File waveFile = new File(this.getCacheDir(), WAVE_FILE_NAME);
+        Log.i("AudioUnit", "WAV file " + waveFile.getAbsolutePath());
         if (waveFile.exists()) {
             waveFile.delete();
         }
 
-        DataOutputStream dos = new DataOutputStream(new FileOutputStream(pcmFile));
-
         if (ActivityCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
             return;
         }
@@ -137,42 +147,83 @@ public class DemodActivity extends AppCompatActivity {
         double fc = Double.parseDouble(pref.getString("carrier_frequency", "6000"));
         double fd = Double.parseDouble(pref.getString("fsk_frequency_deviation", "1000"));
         double ts = Double.parseDouble(pref.getString("fsk_symbol_period", "0.1"));
+        // 流式解码目前只支持BFSK，M进制FSK和OFDM在录音结束后点解码按钮离线解调
+        String modulation = pref.getString("modulation", "FSK");
+        boolean liveDecode = !"OFDM".equals(modulation) && MFSKModulator.order(modulation) == 2;
+        String fec = pref.getString("fec", "NONE");
+        // 录音线程只把样本拷贝进环形缓冲区，写盘和解调分别在各自的消费者线程中进行，
+        // 录音循环不会因为磁盘IO而阻塞
+        ShortRingBuffer diskRing = new ShortRingBuffer(RING_CAPACITY);
+        ShortRingBuffer demodRing = new ShortRingBuffer(RING_CAPACITY);
+
+        // 样本直接写入record.wav，结束时补写头部长度；同时保存一份二进制的调试记录
+        File traceFile = new File(getCacheDir(), "recsig_"+((int)fc)+"_"+((int)fd)+"_"+ts+".sigtrace");
+        Thread diskThread = new Thread(() -> {
+            final short[] chunk = new short[bufferSize / 2];
+            try (
+                    WavWriter wav = new WavWriter(waveFile, 1, AudioUtils.SAMPLE_RATE, 16);
+                    SignalTrace.Writer trace = new SignalTrace.Writer(
+                            traceFile, SignalTrace.ENCODING_INT16,
+                            AudioUtils.SAMPLE_RATE, fc, fd, ts)
+                    ) {
+                int n;
+                while ((n = diskRing.take(chunk, 0, chunk.length)) >= 0) {
+                    wav.write(chunk, 0, n);
+                    trace.write(chunk, 0, n);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+
+        // 边录边解码，每收到一帧就显示出来
+        Thread demodThread = new Thread(() -> {
+            final short[] chunk = new short[bufferSize / 2];
+            BFSKStreamDemodulator streamDemodulator = new BFSKStreamDemodulator(
+                    fc, fd, ts, MAX_PAYLOAD, FecCodec.forName(fec),
+                    rst -> showLiveDecodeRst(new String(rst.msg), rst.error, rst.codeString())
+            );
+            int n;
+            while ((n = demodRing.take(chunk, 0, chunk.length)) >= 0) {
+                streamDemodulator.feed(chunk, 0, n);
+            }
+            streamDemodulator.flush();
+        });
+
         Thread recordThread = new Thread(new Runnable() {
             @Override
             public void run() {
-                final byte[] buffer = new byte[bufferSize];
+                final short[] samples = new short[bufferSize / 2];
+                diskThread.start();
+                if (liveDecode) demodThread.start();
                 audioRecord.startRecording();
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
                 try {
                     while (recordStatus) {
-                        int samplesRead = audioRecord.read(buffer, 0, bufferSize);
-                        if (samplesRead != bufferSize) {
+                        int samplesRead = audioRecord.read(samples, 0, samples.length);
+                        if (samplesRead != samples.length) {
                             Log.w("AudioUtils", "Samples read not equal minSize (" + samplesRead + "). Might be loosing data!");
                         }
+                        if (samplesRead <= 0) continue;
 
-                        dos.write(buffer, 0, samplesRead);
-                        bos.write(buffer, 0, samplesRead);
+                        diskRing.offer(samples, 0, samplesRead);
+                        if (liveDecode) demodRing.offer(samples, 0, samplesRead);
                     }
 
                     audioRecord.stop();
                     audioRecord.release();
-
-                    dos.close();
-                    AudioUtils.PCMToWAV(pcmFile, waveFile, 1, AudioUtils.SAMPLE_RATE, 16);
-
-                    byte[] pcmData = bos.toByteArray();
-
-                    double[] sig = AudioUtils.PCMToDouble(pcmData);
-
-                    String name = "recsig_"+((int)fc)+"_"+((int)fd)+"_"+ts+".txt";
-                    try(FileWriter sw = new FileWriter(new File(that.getCacheDir(), name))){
-                        for(double b : sig){
-                            sw.write(b + "\n");
-                        }
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
                 } finally { // Make sure we always stop recording
+                    diskRing.close();
+                    demodRing.close();
+                    try {
+                        diskThread.join();
+                        demodThread.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (diskRing.overruns() > 0 || demodRing.overruns() > 0) {
+                        Log.w("Record", "Ring buffer overrun, dropped " + diskRing.overruns()
+                                + " samples to disk, " + demodRing.overruns() + " samples to decoder");
+                    }
                     runOnUiThread(new Runnable() {
                         @Override
                         public void run() {
@@ -202,8 +253,8 @@ public class DemodActivity extends AppCompatActivity {
         }
 
         // 检查是不是有已录制的文件
-        File pcmFile = new File(this.getCacheDir(), PCM_FILE_NAME);
-        if (!pcmFile.exists()) {
+        File waveFile = new File(this.getCacheDir(), WAVE_FILE_NAME);
+        if (!waveFile.exists()) {
             Toast.makeText(this, R.string.play_error_help, Toast.LENGTH_SHORT).show();
             return;
         }
@@ -240,14 +291,14 @@ public class DemodActivity extends AppCompatActivity {
         Thread playThread = new Thread(new Runnable() {
             @Override
             public void run() {
-                try {
-                    final byte[] buffer = new byte[bufferSize];
-                    File pcmFile = new File(cacheDir, PCM_FILE_NAME);
-                    FileInputStream fin = new FileInputStream(pcmFile);
-
-                    while (fin.available() > 0 && playStatus) {
-                        int readCount = fin.read(buffer);
-                        if (readCount == -1) break;
+                try (PcmFile wav = PcmFile.open(new File(cacheDir, WAVE_FILE_NAME))) {
+                    checkFormat(wav);
+                    final short[] buffer = new short[bufferSize / 2];
+                    ShortBuffer pcm = wav.samples().duplicate();
+
+                    while (pcm.hasRemaining() && playStatus) {
+                        int readCount = Math.min(buffer.length, pcm.remaining());
+                        pcm.get(buffer, 0, readCount);
                         int writeResult = audioTrack.write(buffer, 0, readCount);
                         if (writeResult < 0) {
                             continue;
@@ -256,6 +307,7 @@ public class DemodActivity extends AppCompatActivity {
                 } catch (IOException e) {
                     Log.e("PLay", "发生IO错误");
                     e.printStackTrace();
+                    runOnUiThread(() -> Toast.makeText(DemodActivity.this, e.getMessage(), Toast.LENGTH_LONG).show());
                 } finally {
                     // play完成，恢复playButton状态
                     runOnUiThread(new Runnable() {
@@ -275,113 +327,107 @@ public class DemodActivity extends AppCompatActivity {
     }
 
     public void onDecodeBtnClicked(View view) {
-        SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(this);
-        double carrierFrequency = Double.parseDouble(pref.getString("carrier_frequency", "6000"));
-        double frequencyDeviation = Double.parseDouble(pref.getString("fsk_frequency_deviation", "1000"));
-        double symbolPeriod = Double.parseDouble(pref.getString("fsk_symbol_period", "0.1"));
-        BFSKDemodulator demodulator = new BFSKDemodulator(
-                carrierFrequency,
-                frequencyDeviation,
-                symbolPeriod
-        );
-
-        File pcmFile = new File(getCacheDir(), PCM_FILE_NAME);
-        if (!pcmFile.exists()) {
-            textView.setText("record something first..");
-            return;
-        }
-        decodeBtn.setEnabled(false);
-
-        DemodActivity that = this;
-        Thread decodeThread = new Thread(() -> {
-            double[] signal = null;
-            String ioerr = null;
-            try {
-                byte[] pcmData = Files.readAllBytes(pcmFile.toPath());
-                signal = AudioUtils.PCMToDouble(pcmData);
-            } catch (IOException e) {
-                ioerr = e.getMessage();
-            }
-
-            double error = 0;
-            String msg = "null";
-            String code = "null";
-            if (ioerr == null) {
-                BFSKDemodulator.DecodeResult rst = demodulator.getData(signal);
-
-                // a little post postprocess
-                int len = rst.msg.length - 1;
-                for(; len >= 0;len--) {
-                    if(rst.msg[len] != -1) break;
-                }
-                if (len == -1) len = rst.msg.length;
-                else len += 1;
-
-                msg = new String(rst.msg, 0, len);
-                Log.d("DemodActivity", "decode result: " + msg);
-                Log.d("DemodActivity", "decode raw" + Arrays.toString(rst.msg));
-                error = rst.error;
-                code = rst.code;
-            } else {
-                msg = ioerr;
-            }
-
-            that.setDecodeRst(msg, error, code);
-        });
-        decodeThread.start();
+        decodeFile(new File(getCacheDir(), WAVE_FILE_NAME));
     }
 
     // Decode the raw pcm data
     public void onDecodeRawBtnClicked(View view) {
+        decodeFile(new File(getCacheDir(), "raw.wav"));
+    }
+
+    // 播放和解调都按SAMPLE_RATE单声道处理，其它采样率或多声道的WAV文件直接拒绝，
+    // 否则交错的多声道样本和错误的采样率会让前导码和符号定时全部错位
+    private static void checkFormat(PcmFile pcm) throws IOException {
+        if (pcm.sampleRate() != AudioUtils.SAMPLE_RATE || pcm.channelCount() != 1) {
+            throw new IOException("Unsupported WAV: " + pcm.sampleRate() + " Hz, " + pcm.channelCount()
+                    + " channels (expected " + AudioUtils.SAMPLE_RATE + " Hz mono)");
+        }
+    }
+
+    // 在后台线程中解码PCM/WAV文件，文件以内存映射方式按窗口读取
+    private void decodeFile(File pcmFile) {
         SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(this);
         double carrierFrequency = Double.parseDouble(pref.getString("carrier_frequency", "6000"));
         double frequencyDeviation = Double.parseDouble(pref.getString("fsk_frequency_deviation", "1000"));
         double symbolPeriod = Double.parseDouble(pref.getString("fsk_symbol_period", "0.1"));
-        BFSKDemodulator demodulator = new BFSKDemodulator(
-                carrierFrequency,
-                frequencyDeviation,
-                symbolPeriod
-        );
+        String modulation = pref.getString("modulation", "FSK");
+        int order = MFSKModulator.order(modulation);
+        String fec = pref.getString("fec", "NONE");
+        FecCodec codec = FecCodec.forName(fec);
+        // debug版本输出解调过程和各阶段的耗时，release版本不做任何统计
+        DemodStats stats = BuildConfig.DEBUG ? new LogcatMetrics() : null;
+        DemodMetrics metrics = stats != null ? stats : DemodMetrics.NONE;
+        Demodulator demodulator;
+        if ("OFDM".equals(modulation)) {
+            demodulator = new OFDMDemodulator(carrierFrequency, frequencyDeviation);
+        } else if (order == 2) {
+            demodulator = new BFSKDemodulator(carrierFrequency, frequencyDeviation, symbolPeriod, codec, metrics);
+        } else {
+            demodulator = new MFSKDemodulator(order, carrierFrequency, frequencyDeviation, symbolPeriod, codec, metrics);
+        }
 
-        File pcmFile = new File(getCacheDir(), "raw.pcm");
         if (!pcmFile.exists()) {
             textView.setText("record something first..");
             return;
         }
+        String source = SpectrumCache.source(pcmFile);
+        String decodeKey = source + '#' + modulation + ',' + carrierFrequency + ',' + frequencyDeviation
+                + ',' + symbolPeriod + ',' + fec;
+        if (decodeKey.equals(lastDecodeKey)) {
+            setDecodeRst(lastMsg, lastError, lastCode);
+            return;
+        }
         decodeBtn.setEnabled(false);
 
         DemodActivity that = this;
         Thread decodeThread = new Thread(() -> {
-            double[] signal = null;
-            String ioerr = null;
-            try {
-                byte[] pcmData = Files.readAllBytes(pcmFile.toPath());
-                signal = AudioUtils.PCMToDouble(pcmData);
-            } catch (IOException e) {
-                ioerr = e.getMessage();
-            }
-
             double error = 0;
             String msg = "null";
             String code = "null";
-            if (ioerr == null) {
-                BFSKDemodulator.DecodeResult rst = demodulator.getData(signal);
+            try (PcmFile pcm = PcmFile.open(pcmFile)) {
+                checkFormat(pcm);
+                Samples samples = Samples.of(pcm.samples());
+                // 录音中可能有多个帧，逐帧显示；一个前导码都找不到时按单帧解码
+                List<BFSKDemodulator.DecodeResult> frames;
+                if (demodulator instanceof BFSKDemodulator) {
+                    BFSKDemodulator bfsk = (BFSKDemodulator) demodulator;
+                    Spectrum X = SPECTRA.get(source, bfsk, samples);
+                    frames = bfsk.getFrames(samples, X, MAX_PAYLOAD);
+                    if (frames.isEmpty()) frames = Collections.singletonList(bfsk.getData(samples, X));
+                } else {
+                    frames = demodulator.getFrames(samples, MAX_PAYLOAD);
+                    if (frames.isEmpty()) frames = Collections.singletonList(demodulator.getData(samples));
+                }
+
+                StringBuilder msgs = new StringBuilder();
+                StringBuilder codes = new StringBuilder();
+                for (BFSKDemodulator.DecodeResult rst : frames) {
+                    // a little post postprocess
+                    int len = rst.msg.length - 1;
+                    for(; len >= 0;len--) {
+                        if(rst.msg[len] != -1) break;
+                    }
+                    if (len == -1) len = rst.msg.length;
+                    else len += 1;
 
-                // a little post postprocess
-                int len = rst.msg.length - 1;
-                for(; len >= 0;len--) {
-                    if(rst.msg[len] != -1) break;
+                    if (msgs.length() > 0) {
+                        msgs.append('\n');
+                        codes.append('\n');
+                    }
+                    msgs.append(new String(rst.msg, 0, len));
+                    codes.append(rst.codeString());
+                    error = Math.max(error, rst.error);
+                }
+                msg = msgs.toString();
+                // 各帧的内容已经由解调器通过LogcatMetrics输出，只在调试版本中记录
+                if (stats != null) {
+                    Log.d("DemodActivity", "decode result: " + msg);
+                    Log.d("DemodActivity", "decode stats: " + stats);
                 }
-                if (len == -1) len = rst.msg.length;
-                else len += 1;
-
-                msg = new String(rst.msg, 0, len);
-                Log.d("DemodActivity", "decode result: " + msg);
-                Log.d("DemodActivity", "decode raw" + Arrays.toString(rst.msg));
-                error = rst.error;
-                code = rst.code;
-            } else {
-                msg = ioerr;
+                code = codes.toString();
+                that.remember(decodeKey, msg, error, code);
+            } catch (IOException e) {
+                msg = e.getMessage();
             }
 
             that.setDecodeRst(msg, error, code);
@@ -389,6 +435,24 @@ public class DemodActivity extends AppCompatActivity {
         decodeThread.start();
     }
 
+    private void remember(String decodeKey, String msg, double error, String code) {
+        this.runOnUiThread(() -> {
+            lastDecodeKey = decodeKey;
+            lastMsg = msg;
+            lastError = error;
+            lastCode = code;
+        });
+    }
+
+    // 录音过程中显示流式解码的结果，不改变按钮状态
+    private void showLiveDecodeRst(final String msg, double err, String code) {
+        this.runOnUiThread(() -> {
+            textView.setText(msg);
+            error_text.setText(String.format("%.3f", err));
+            textViewCode.setText(code);
+        });
+    }
+
     public void setDecodeRst(final String msg, double err, String code) {
         this.runOnUiThread(() -> {
             decodeBtn.setEnabled(true);
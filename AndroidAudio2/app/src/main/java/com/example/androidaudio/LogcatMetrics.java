@@ -0,0 +1,20 @@
+package com.example.androidaudio;
+
+import android.util.Log;
+
+import com.example.androidaudio.signal.DemodStats;
+
+/**
+ * 汇总解调统计，同时把解调器的调试信息输出到logcat
+ */
+public class LogcatMetrics extends DemodStats {
+    @Override
+    public boolean debugEnabled() {
+        return true;
+    }
+
+    @Override
+    public void debug(String tag, String message) {
+        Log.d(tag, message);
+    }
+}
@@ -27,15 +27,17 @@ import android.widget.EditText;
 import android.widget.Toast;
 
 import com.example.androidaudio.audio.AudioUtils;
+import com.example.androidaudio.audio.SignalTrace;
+import com.example.androidaudio.audio.WavWriter;
 import com.example.androidaudio.signal.BFSKModulator;
+import com.example.androidaudio.signal.FecCodec;
+import com.example.androidaudio.signal.MFSKModulator;
+import com.example.androidaudio.signal.Modulator;
+import com.example.androidaudio.signal.OFDMModulator;
 
-import java.io.ByteArrayInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
@@ -74,6 +76,33 @@ public class MainActivity extends AppCompatActivity {
 
     public void onPlayButtonClicked(View view) {
         if (!playStatus) {
+            // 读取BFSK的参数
+            SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(this);
+            double carrierFrequency = Double.parseDouble(pref.getString("carrier_frequency", "6000"));
+            double frequencyDeviation = Double.parseDouble(pref.getString("fsk_frequency_deviation", "1000"));
+            double symbolPeriod = Double.parseDouble(pref.getString("fsk_symbol_period", "0.1"));
+            String modulation = pref.getString("modulation", "FSK");
+            int order = MFSKModulator.order(modulation);
+            FecCodec codec = FecCodec.forName(pref.getString("fec", "NONE"));
+            // 创建调制器，M进制FSK的fd为最高/最低频率与载波的频差，OFDM的子载波位于 [fc-fd, fc+fd]
+            Modulator modulator;
+            if ("OFDM".equals(modulation)) {
+                modulator = new OFDMModulator(AudioUtils.SAMPLE_RATE, frequencyDeviation);
+            } else if (order == 2) {
+                modulator = new BFSKModulator(AudioUtils.SAMPLE_RATE, frequencyDeviation, symbolPeriod, codec);
+            } else {
+                modulator = new MFSKModulator(AudioUtils.SAMPLE_RATE, order, frequencyDeviation, symbolPeriod, codec);
+            }
+            byte[] dataToModulate = editEncodeData.getText().toString().getBytes();
+            // 在UI线程上生成帧，负载过长或含有结束码时提示用户，不在播放线程上抛出异常
+            final Modulator.SampleStream stream;
+            try {
+                stream = modulator.openStream(carrierFrequency, dataToModulate);
+            } catch (IllegalArgumentException e) {
+                Toast.makeText(this, getString(R.string.payload_error_help, e.getMessage()), Toast.LENGTH_LONG).show();
+                return;
+            }
+
             playStatus = true;
             // 检查是不是有已录制的文件
 //            File pcmFile = new File(this.getCacheDir(), PCM_FILE_NAME);
@@ -104,16 +133,7 @@ public class MainActivity extends AppCompatActivity {
             );
 
             audioTrack.play();
-            // 读取BFSK的参数
-            SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(this);
-            double carrierFrequency = Double.parseDouble(pref.getString("carrier_frequency", "6000"));
-            double frequencyDeviation = Double.parseDouble(pref.getString("fsk_frequency_deviation", "1000"));
-            double symbolPeriod = Double.parseDouble(pref.getString("fsk_symbol_period", "0.1"));
-            // 创建调制器
-            BFSKModulator bfskModulation = new BFSKModulator(AudioUtils.SAMPLE_RATE, frequencyDeviation, symbolPeriod);
-            byte[] dataToModulate = editEncodeData.getText().toString().getBytes();
-
-            Log.d("BFSK 参数", carrierFrequency + " " + frequencyDeviation + " " + symbolPeriod);
+            Log.d("FSK 参数", modulation + " " + carrierFrequency + " " + frequencyDeviation + " " + symbolPeriod);
 
             final File cacheDir = getCacheDir();
 
@@ -122,39 +142,31 @@ public class MainActivity extends AppCompatActivity {
 
                 @Override
                 public void run() {
-                    try {
-                        final byte[] buffer = new byte[bufferSize];
-                        // 获取调制后的信号
-                        double[] signal = bfskModulation.getRealSignal(carrierFrequency, dataToModulate);
-                        // 转化为PCM编码的字节流
-                        byte[] pcmData = AudioUtils.doubleToPCM(signal);
-                        // 转为输入流
-                        InputStream is = new ByteArrayInputStream(pcmData);
-
-                        // 保存源文件到硬盘
-                        File rawPCMFile = new File(cacheDir, "raw.pcm");
-                        File rawWAVFile = new File(cacheDir, "raw.wav");
-                        try (FileOutputStream fos = new FileOutputStream(rawPCMFile)){
-                            fos.write(pcmData);
-                        }
-                        AudioUtils.PCMToWAV(rawPCMFile, rawWAVFile, 1, AudioUtils.SAMPLE_RATE, 16);
-                        File signalFile = new File(cacheDir, "sig.txt");
-                        try(
-                                FileWriter w = new FileWriter(signalFile);
-                                ){
-                            for(double b : signal) w.write(b + "\n");
-                        }
-
-                        while (is.available() > 0 && playStatus) {
-                            int readCount = is.read(buffer);
+                    // 保存源文件到硬盘
+                    File rawWAVFile = new File(cacheDir, "raw.wav");
+                    File signalFile = new File(cacheDir, "sig.sigtrace");
+                    try (
+                            WavWriter wav = new WavWriter(rawWAVFile, 1, AudioUtils.SAMPLE_RATE, 16);
+                            SignalTrace.Writer trace = new SignalTrace.Writer(
+                                    signalFile, SignalTrace.ENCODING_INT16,
+                                    AudioUtils.SAMPLE_RATE, carrierFrequency, frequencyDeviation, symbolPeriod);
+                            ) {
+                        // 每次只生成一块PCM，写入AudioTrack后再生成下一块
+                        final short[] buffer = new short[bufferSize / 2];
+
+                        while (playStatus) {
+                            int readCount = stream.read(buffer, 0, buffer.length);
                             Log.d("PLay", "读取数据" + readCount);
                             if (readCount == -1) {
                                 break;
                             }
                             int writeResult = audioTrack.write(buffer, 0, readCount);
                             if (writeResult < 0) {
-                                continue;
+                                Log.w("PLay", "AudioTrack写入失败: " + writeResult);
                             }
+
+                            wav.write(buffer, 0, readCount);
+                            trace.write(buffer, 0, readCount);
                         }
                     } catch (IOException e) {
                         Log.e("PLay", "发生IO错误");
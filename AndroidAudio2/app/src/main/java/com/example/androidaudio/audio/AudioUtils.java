@@ -12,49 +12,194 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
 
 public class AudioUtils {
     public final static int SAMPLE_RATE = 48000;
 
 
     /**
-     * 将double[]数组转化为PCM字节流
+     * PCM字节流的字节序，AudioRecord/AudioTrack以及保存的.pcm/.wav文件都是小端
+     */
+    public final static ByteOrder PCM_BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final static double PCM_SCALE = Short.MAX_VALUE;
+
+    /**
+     * 将double[]数组转化为PCM字节流(小端)
      * @param audioData
      * @return
      */
     static public byte[] doubleToPCM(double[] audioData) {
-        short shorts[] = new short[audioData.length];
-        for (int i = 0; i < audioData.length; i++) {
-            if (Math.abs(audioData[i]) <= 1) {
-                shorts[i] = (short) Math.round(audioData[i] * Short.MAX_VALUE);
-            } else if (audioData[i] > 1) { // 超出范围的进行截断
-                shorts[i] = Short.MAX_VALUE;
-            } else if (audioData[i] < 1) {
-                shorts[i] = Short.MIN_VALUE;
-            }
-        }
-        ByteBuffer bytes = ByteBuffer.allocate(shorts.length * 2);
-        for (short s : shorts) {
-            bytes.putShort(s);
-        }
-        return bytes.array();
+        byte[] bytes = new byte[audioData.length * 2];
+        doubleToPCM(audioData, 0, bytes, 0, audioData.length, PCM_BYTE_ORDER);
+        return bytes;
     }
 
     /**
-     * 将PCM字节流转化为double[]
+     * 将PCM字节流(小端)转化为double[]
      * @param pcmData
      * @return
      */
     static public double[] PCMToDouble(byte[] pcmData) {
-        short shorts[] = new short[pcmData.length / 2];
-        // ByteBuffer.wrap(pcmData).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(shorts);
-        ByteBuffer.wrap(pcmData).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(shorts, 0, shorts.length);
-        DoubleBuffer doubles = DoubleBuffer.allocate(shorts.length);
-        for (short s : shorts) {
-            doubles.put(s / 32767.0);
+        double[] doubles = new double[pcmData.length / 2];
+        PCMToDouble(pcmData, 0, doubles, 0, doubles.length, PCM_BYTE_ORDER);
+        return doubles;
+    }
+
+    /**
+     * 将float[]数组转化为PCM字节流(小端)
+     */
+    static public byte[] floatToPCM(float[] audioData) {
+        byte[] bytes = new byte[audioData.length * 2];
+        floatToPCM(audioData, 0, bytes, 0, audioData.length, PCM_BYTE_ORDER);
+        return bytes;
+    }
+
+    /**
+     * 将PCM字节流(小端)转化为float[]，内存占用是PCMToDouble的一半
+     */
+    static public float[] PCMToFloat(byte[] pcmData) {
+        float[] floats = new float[pcmData.length / 2];
+        PCMToFloat(pcmData, 0, floats, 0, floats.length, PCM_BYTE_ORDER);
+        return floats;
+    }
+
+    /**
+     * 单个样本[-1, 1]转为16bit PCM，超出范围的进行截断
+     */
+    static public short toPCM(double v) {
+        if (v > 1) return Short.MAX_VALUE;
+        if (v < -1) return Short.MIN_VALUE;
+        return (short) Math.round(v * PCM_SCALE);
+    }
+
+    static public short toPCM(float v) {
+        if (v > 1) return Short.MAX_VALUE;
+        if (v < -1) return Short.MIN_VALUE;
+        return (short) Math.round(v * (float) PCM_SCALE);
+    }
+
+    /*
+     * 以下批量转换函数都写入调用方提供的缓冲区，不分配内存，缩放与截断在同一遍循环中完成。
+     * byte[]版本显式指定字节序；ByteBuffer版本使用缓冲区自身的order()，从position()开始读写并推进position。
+     */
+
+    static public void doubleToPCM(double[] src, int srcOff, short[] dst, int dstOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = toPCM(src[srcOff + i]);
+        }
+    }
+
+    static public void floatToPCM(float[] src, int srcOff, short[] dst, int dstOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = toPCM(src[srcOff + i]);
+        }
+    }
+
+    static public void doubleToPCM(double[] src, int srcOff, byte[] dst, int dstOff, int len, ByteOrder order) {
+        boolean little = order == ByteOrder.LITTLE_ENDIAN;
+        for (int i = 0; i < len; i++) {
+            putShort(dst, dstOff + 2 * i, toPCM(src[srcOff + i]), little);
+        }
+    }
+
+    static public void floatToPCM(float[] src, int srcOff, byte[] dst, int dstOff, int len, ByteOrder order) {
+        boolean little = order == ByteOrder.LITTLE_ENDIAN;
+        for (int i = 0; i < len; i++) {
+            putShort(dst, dstOff + 2 * i, toPCM(src[srcOff + i]), little);
+        }
+    }
+
+    static public void shortToPCM(short[] src, int srcOff, byte[] dst, int dstOff, int len, ByteOrder order) {
+        boolean little = order == ByteOrder.LITTLE_ENDIAN;
+        for (int i = 0; i < len; i++) {
+            putShort(dst, dstOff + 2 * i, src[srcOff + i], little);
+        }
+    }
+
+    static public void doubleToPCM(double[] src, int srcOff, int len, ByteBuffer dst) {
+        for (int i = 0; i < len; i++) {
+            dst.putShort(toPCM(src[srcOff + i]));
+        }
+    }
+
+    static public void floatToPCM(float[] src, int srcOff, int len, ByteBuffer dst) {
+        for (int i = 0; i < len; i++) {
+            dst.putShort(toPCM(src[srcOff + i]));
+        }
+    }
+
+    static public void shortToPCM(short[] src, int srcOff, int len, ByteBuffer dst) {
+        for (int i = 0; i < len; i++) {
+            dst.putShort(src[srcOff + i]);
+        }
+    }
+
+    static public void PCMToDouble(short[] src, int srcOff, double[] dst, int dstOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = src[srcOff + i] / PCM_SCALE;
         }
-        return doubles.array();
+    }
+
+    static public void PCMToFloat(short[] src, int srcOff, float[] dst, int dstOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = src[srcOff + i] / (float) PCM_SCALE;
+        }
+    }
+
+    static public void PCMToDouble(byte[] src, int srcOff, double[] dst, int dstOff, int len, ByteOrder order) {
+        boolean little = order == ByteOrder.LITTLE_ENDIAN;
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = getShort(src, srcOff + 2 * i, little) / PCM_SCALE;
+        }
+    }
+
+    static public void PCMToFloat(byte[] src, int srcOff, float[] dst, int dstOff, int len, ByteOrder order) {
+        boolean little = order == ByteOrder.LITTLE_ENDIAN;
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = getShort(src, srcOff + 2 * i, little) / (float) PCM_SCALE;
+        }
+    }
+
+    static public void PCMToShort(byte[] src, int srcOff, short[] dst, int dstOff, int len, ByteOrder order) {
+        boolean little = order == ByteOrder.LITTLE_ENDIAN;
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = getShort(src, srcOff + 2 * i, little);
+        }
+    }
+
+    static public void PCMToDouble(ByteBuffer src, double[] dst, int dstOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = src.getShort() / PCM_SCALE;
+        }
+    }
+
+    static public void PCMToFloat(ByteBuffer src, float[] dst, int dstOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = src.getShort() / (float) PCM_SCALE;
+        }
+    }
+
+    static public void PCMToShort(ByteBuffer src, short[] dst, int dstOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = src.getShort();
+        }
+    }
+
+    private static void putShort(byte[] dst, int i, short s, boolean little) {
+        if (little) {
+            dst[i] = (byte) s;
+            dst[i + 1] = (byte) (s >> 8);
+        } else {
+            dst[i] = (byte) (s >> 8);
+            dst[i + 1] = (byte) s;
+        }
+    }
+
+    private static short getShort(byte[] src, int i, boolean little) {
+        if (little) return (short) ((src[i] & 0xff) | (src[i + 1] << 8));
+        return (short) ((src[i] << 8) | (src[i + 1] & 0xff));
     }
 
 
@@ -69,29 +214,21 @@ public class AudioUtils {
      * @see <a href="http://soundfile.sapp.org/doc/WaveFormat/">soundfile.sapp.org/doc/WaveFormat</a>
      */
     static public void PCMToWAV(File input, File output, int channelCount, int sampleRate, int bitsPerSample) {
-        final int inputSize = (int) input.length();
-
-        try {
-            OutputStream encoded = new FileOutputStream(output);
-            // WAVE RIFF header
-            writeToOutput(encoded, "RIFF"); // chunk id
-            writeToOutput(encoded, 36 + inputSize); // chunk size
-            writeToOutput(encoded, "WAVE"); // format
-
-            // SUB CHUNK 1 (FORMAT)
-            writeToOutput(encoded, "fmt "); // subchunk 1 id
-            writeToOutput(encoded, 16); // subchunk 1 size
-            writeToOutput(encoded, (short) 1); // audio format (1 = PCM)
-            writeToOutput(encoded, (short) channelCount); // number of channelCount
-            writeToOutput(encoded, sampleRate); // sample rate
-            writeToOutput(encoded, sampleRate * channelCount * bitsPerSample / 8); // byte rate
-            writeToOutput(encoded, (short) (channelCount * bitsPerSample / 8)); // block align
-            writeToOutput(encoded, (short) bitsPerSample); // bits per sample
-
-            // SUB CHUNK 2 (AUDIO DATA)
-            writeToOutput(encoded, "data"); // subchunk 2 id
-            writeToOutput(encoded, inputSize); // subchunk 2 size
-            copy(new FileInputStream(input), encoded);
+        final long inputSize = input.length();
+
+        try (
+                FileChannel in = new FileInputStream(input).getChannel();
+                FileChannel encoded = new FileOutputStream(output).getChannel()
+        ) {
+            ByteBuffer header = ByteBuffer.allocate(WavWriter.HEADER_SIZE);
+            WavWriter.putHeader(header, channelCount, sampleRate, bitsPerSample, inputSize);
+            header.flip();
+            while (header.hasRemaining()) {
+                encoded.write(header);
+            }
+            for (long pos = 0; pos < inputSize; ) {
+                pos += in.transferTo(pos, inputSize - pos, encoded);
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
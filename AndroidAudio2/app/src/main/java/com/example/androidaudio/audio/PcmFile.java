@@ -0,0 +1,117 @@
+package com.example.androidaudio.audio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 以内存映射方式打开的16bit PCM/WAV文件
+ *
+ * 样本通过FileChannel.map映射进内存，samples()返回的ShortBuffer直接指向映射区域，
+ * 不把文件读到堆上，数据按需由系统的页缓存换入。
+ * 以"RIFF....WAVE"开头的文件按WAV解析头部，其余按裸PCM(单声道，SAMPLE_RATE，小端)处理。
+ */
+public class PcmFile implements Closeable {
+    private final RandomAccessFile file;
+    private final ShortBuffer samples;
+    private final int sampleRate;
+    private final int channelCount;
+
+    private PcmFile(RandomAccessFile file, ShortBuffer samples, int sampleRate, int channelCount) {
+        this.file = file;
+        this.samples = samples;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+    }
+
+    /**
+     * 打开并映射一个PCM或WAV文件
+     * @throws IOException 文件无法读取，或者WAV不是16bit PCM
+     */
+    public static PcmFile open(File input) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(input, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            long dataOffset = 0;
+            long dataSize = size;
+            int sampleRate = AudioUtils.SAMPLE_RATE;
+            int channelCount = 1;
+
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            if (size >= 12 && header.getInt(0) == fourCC("RIFF") && header.getInt(8) == fourCC("WAVE")) {
+                // 逐个遍历子块，找到fmt和data
+                ByteBuffer chunk = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+                long pos = 12;
+                boolean found = false;
+                while (pos + 8 <= size) {
+                    chunk.clear().limit(8);
+                    channel.read(chunk, pos);
+                    int id = chunk.getInt(0);
+                    long chunkSize = chunk.getInt(4) & 0xffffffffL;
+                    pos += 8;
+                    if (id == fourCC("fmt ")) {
+                        chunk.clear();
+                        channel.read(chunk, pos);
+                        int format = chunk.getShort(0);
+                        channelCount = chunk.getShort(2);
+                        sampleRate = chunk.getInt(4);
+                        int bitsPerSample = chunk.getShort(14);
+                        if (format != 1 || bitsPerSample != 16) {
+                            throw new IOException("Unsupported WAV format " + format + ", " + bitsPerSample + " bits");
+                        }
+                    } else if (id == fourCC("data")) {
+                        dataOffset = pos;
+                        // 录音中断时头部的长度可能没有写入，以文件实际长度为准
+                        dataSize = chunkSize == 0 || pos + chunkSize > size ? size - pos : chunkSize;
+                        found = true;
+                        break;
+                    }
+                    pos += chunkSize + (chunkSize & 1);
+                }
+                if (!found) throw new IOException("No data chunk in " + input);
+            }
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, dataSize & ~1L);
+            ShortBuffer samples = mapped.order(AudioUtils.PCM_BYTE_ORDER).asShortBuffer();
+            return new PcmFile(raf, samples, sampleRate, channelCount);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private static int fourCC(String id) {
+        return (id.charAt(0)) | (id.charAt(1) << 8) | (id.charAt(2) << 16) | (id.charAt(3) << 24);
+    }
+
+    /**
+     * @return 映射区域上的样本视图(多声道时交错存放)，与文件共享数据
+     */
+    public ShortBuffer samples() {
+        return samples;
+    }
+
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    public int channelCount() {
+        return channelCount;
+    }
+
+    /**
+     * 关闭文件。已经返回的samples()在映射被回收前仍然可以读取
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
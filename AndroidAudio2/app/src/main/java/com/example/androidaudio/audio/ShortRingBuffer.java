@@ -0,0 +1,108 @@
+package com.example.androidaudio.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单生产者/单消费者的无锁环形缓冲区，存放16bit样本
+ *
+ * 录音线程是唯一的生产者，offer只做数组拷贝，永远不会阻塞：缓冲区满时多出的样本被丢弃并计入overruns。
+ * 消费者线程(写盘、解调)各自持有一个缓冲区，用poll取数据(不等待)或take取数据(没有数据时短暂park后重试)。
+ * 读写位置是只增不减的long，分别只由消费者/生产者修改，通过lazySet发布。
+ */
+public class ShortRingBuffer {
+    private final short[] buffer;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();       // 下一个要读的位置，只由消费者修改
+    private final AtomicLong tail = new AtomicLong();       // 下一个要写的位置，只由生产者修改
+    private final AtomicLong overruns = new AtomicLong();   // 因缓冲区满而丢弃的样本数
+    private volatile boolean closed = false;
+
+    private static final long POLL_INTERVAL_NS = 1_000_000;
+
+    /**
+     * @param capacity 容量(样本数)，向上取整为2的幂
+     */
+    public ShortRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.buffer = new short[size];
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * 生产者写入样本，空间不足时只写入能放下的部分
+     * @return 实际写入的样本数
+     */
+    public int offer(short[] src, int off, int len) {
+        long t = tail.get();
+        int free = buffer.length - (int) (t - head.get());
+        int n = Math.min(len, free);
+        int start = (int) (t & mask);
+        int first = Math.min(n, buffer.length - start);
+        System.arraycopy(src, off, buffer, start, first);
+        System.arraycopy(src, off + first, buffer, 0, n - first);
+        tail.lazySet(t + n);
+        if (n < len) overruns.addAndGet(len - n);
+        return n;
+    }
+
+    /**
+     * 消费者读取样本
+     * @return 实际读到的样本数，没有数据时返回0
+     */
+    public int poll(short[] dst, int off, int len) {
+        long h = head.get();
+        int n = Math.min(len, (int) (tail.get() - h));
+        int start = (int) (h & mask);
+        int first = Math.min(n, buffer.length - start);
+        System.arraycopy(buffer, start, dst, off, first);
+        System.arraycopy(buffer, 0, dst, off + first, n - first);
+        head.lazySet(h + n);
+        return n;
+    }
+
+    /**
+     * 消费者读取样本，没有数据时每隔约1ms重试一次(只有消费者等待，生产者不受影响)
+     * @return 实际读到的样本数，缓冲区已关闭且读完时返回-1
+     */
+    public int take(short[] dst, int off, int len) {
+        while (true) {
+            int n = poll(dst, off, len);
+            if (n > 0 || len == 0) return n;
+            if (isDrained()) return -1;
+            LockSupport.parkNanos(POLL_INTERVAL_NS);
+        }
+    }
+
+    /**
+     * @return 可读的样本数
+     */
+    public int available() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return 因缓冲区满而丢弃的样本总数
+     */
+    public long overruns() {
+        return overruns.get();
+    }
+
+    /**
+     * 生产者不再写入时调用，消费者读空后即可退出
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * @return 已关闭且数据已读完
+     */
+    public boolean isDrained() {
+        return closed && available() == 0;
+    }
+}
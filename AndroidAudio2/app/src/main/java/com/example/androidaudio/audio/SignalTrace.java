@@ -0,0 +1,201 @@
+package com.example.androidaudio.audio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 调试用的二进制信号记录(.sigtrace)，代替逐样本写文本
+ *
+ * 文件格式(小端)：
+ * <pre>
+ *   0  4  magic "SGTR"
+ *   4  2  version = 1
+ *   6  2  encoding: 1 = int16, 2 = float32
+ *   8  4  sample rate
+ *  12  8  carrier frequency fc (double)
+ *  20  8  frequency deviation fd (double)
+ *  28  8  symbol period (double)
+ *  36  8  sample count，Writer关闭时写入
+ *  44     样本
+ * </pre>
+ */
+public final class SignalTrace {
+    public static final int HEADER_SIZE = 44;
+    public static final int ENCODING_INT16 = 1;
+    public static final int ENCODING_FLOAT32 = 2;
+
+    private static final int MAGIC = 0x52544753; // "SGTR"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private SignalTrace() {
+    }
+
+    /**
+     * 记录的参数
+     */
+    public static class Header {
+        public final int encoding;
+        public final int sampleRate;
+        public final double fc;
+        public final double fd;
+        public final double symbolPeriod;
+        public final long sampleCount;
+
+        public Header(int encoding, int sampleRate, double fc, double fd, double symbolPeriod, long sampleCount) {
+            this.encoding = encoding;
+            this.sampleRate = sampleRate;
+            this.fc = fc;
+            this.fd = fd;
+            this.symbolPeriod = symbolPeriod;
+            this.sampleCount = sampleCount;
+        }
+
+        int bytesPerSample() {
+            return encoding == ENCODING_FLOAT32 ? 4 : 2;
+        }
+    }
+
+    /**
+     * 通过可复用的direct缓冲区写入FileChannel
+     */
+    public static class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int encoding;
+        private long sampleCount = 0;
+
+        public Writer(File output, int encoding, int sampleRate, double fc, double fd, double symbolPeriod) throws IOException {
+            if (encoding != ENCODING_INT16 && encoding != ENCODING_FLOAT32) {
+                throw new IllegalArgumentException("Unknown encoding " + encoding);
+            }
+            this.channel = new FileOutputStream(output).getChannel();
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            this.encoding = encoding;
+            buffer.putInt(MAGIC)
+                    .putShort((short) VERSION)
+                    .putShort((short) encoding)
+                    .putInt(sampleRate)
+                    .putDouble(fc)
+                    .putDouble(fd)
+                    .putDouble(symbolPeriod)
+                    .putLong(0);
+        }
+
+        public void write(short[] src, int off, int len) throws IOException {
+            for (int i = 0; i < len; i++) {
+                if (buffer.remaining() < 4) flushBuffer();
+                if (encoding == ENCODING_INT16) buffer.putShort(src[off + i]);
+                else buffer.putFloat(src[off + i] / 32767.0f);
+            }
+            sampleCount += len;
+        }
+
+        public void write(double[] src, int off, int len) throws IOException {
+            for (int i = 0; i < len; i++) {
+                if (buffer.remaining() < 4) flushBuffer();
+                if (encoding == ENCODING_INT16) buffer.putShort(AudioUtils.toPCM(src[off + i]));
+                else buffer.putFloat((float) src[off + i]);
+            }
+            sampleCount += len;
+        }
+
+        private void flushBuffer() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flushBuffer();
+                ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                count.putLong(0, sampleCount);
+                channel.write(count, 36);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * 离线分析时读取记录，样本按[-1, 1]返回
+     */
+    public static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final Header header;
+
+        public Reader(File input) throws IOException {
+            this.channel = new FileInputStream(input).getChannel();
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                buffer.limit(HEADER_SIZE);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) throw new IOException("Truncated trace header");
+                }
+                buffer.flip();
+                if (buffer.getInt() != MAGIC) throw new IOException("Not a signal trace: " + input);
+                int version = buffer.getShort();
+                if (version != VERSION) throw new IOException("Unsupported trace version " + version);
+                int encoding = buffer.getShort();
+                int sampleRate = buffer.getInt();
+                double fc = buffer.getDouble();
+                double fd = buffer.getDouble();
+                double symbolPeriod = buffer.getDouble();
+                long sampleCount = buffer.getLong();
+                Header h = new Header(encoding, sampleRate, fc, fd, symbolPeriod, sampleCount);
+                if (sampleCount == 0) {
+                    // Writer未正常关闭，按文件长度推算
+                    sampleCount = (channel.size() - HEADER_SIZE) / h.bytesPerSample();
+                    h = new Header(encoding, sampleRate, fc, fd, symbolPeriod, sampleCount);
+                }
+                this.header = h;
+                buffer.clear().limit(0);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public Header header() {
+            return header;
+        }
+
+        /**
+         * 读取最多len个样本
+         * @return 读到的样本数，文件结束时返回-1
+         */
+        public int read(double[] dst, int off, int len) throws IOException {
+            int bytesPerSample = header.bytesPerSample();
+            int n = 0;
+            while (n < len) {
+                if (buffer.remaining() < bytesPerSample) {
+                    buffer.compact();
+                    int r = channel.read(buffer);
+                    buffer.flip();
+                    if (r < 0 && buffer.remaining() < bytesPerSample) break;
+                    continue;
+                }
+                dst[off + n++] = header.encoding == ENCODING_INT16
+                        ? buffer.getShort() / 32767.0
+                        : buffer.getFloat();
+            }
+            return n == 0 && len > 0 ? -1 : n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
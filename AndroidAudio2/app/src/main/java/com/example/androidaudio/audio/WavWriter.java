@@ -0,0 +1,152 @@
+package com.example.androidaudio.audio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 边录边写的WAV文件
+ *
+ * 先写入长度为0的44字节头部，样本经过一块可复用的direct缓冲区写入FileChannel，
+ * close时再回到文件开头改写RIFF和data的长度。每个字节只写一次，不需要先存成PCM再转换。
+ *
+ * @see <a href="http://soundfile.sapp.org/doc/WaveFormat/">soundfile.sapp.org/doc/WaveFormat</a>
+ */
+public class WavWriter implements Closeable {
+    public static final int HEADER_SIZE = 44;
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int channelCount;
+    private final int sampleRate;
+    private final int bitsPerSample;
+    private long dataSize = 0;
+
+    /**
+     * @param output        输出文件，已存在时覆盖
+     * @param channelCount  number of channels: 1 for mono, 2 for stereo, etc.
+     * @param sampleRate    sample rate of PCM audio
+     * @param bitsPerSample bits per sample, i.e. 16 for PCM16，必须是8的整数倍
+     */
+    public WavWriter(File output, int channelCount, int sampleRate, int bitsPerSample) throws IOException {
+        if (bitsPerSample <= 0 || bitsPerSample % 8 != 0) {
+            throw new IllegalArgumentException("bitsPerSample must be a positive multiple of 8: " + bitsPerSample);
+        }
+        this.channel = new FileOutputStream(output).getChannel();
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(AudioUtils.PCM_BYTE_ORDER);
+        this.channelCount = channelCount;
+        this.sampleRate = sampleRate;
+        this.bitsPerSample = bitsPerSample;
+        putHeader(buffer, channelCount, sampleRate, bitsPerSample, 0);
+    }
+
+    /**
+     * 写入16bit样本，只能用于bitsPerSample为16的文件
+     */
+    public void write(short[] src, int off, int len) throws IOException {
+        if (bitsPerSample != 16) {
+            throw new IllegalStateException("16 bit samples written to a " + bitsPerSample + " bit WAV");
+        }
+        while (len > 0) {
+            if (buffer.remaining() < 2) flushBuffer();
+            int n = Math.min(len, buffer.remaining() / 2);
+            AudioUtils.shortToPCM(src, off, n, buffer);
+            off += n;
+            len -= n;
+            dataSize += 2L * n;
+        }
+    }
+
+    /**
+     * 写入已经编码好的PCM字节，格式需与构造时的声道数和bitsPerSample一致
+     */
+    public void write(byte[] src, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!buffer.hasRemaining()) flushBuffer();
+            int n = Math.min(len, buffer.remaining());
+            buffer.put(src, off, n);
+            off += n;
+            len -= n;
+            dataSize += n;
+        }
+    }
+
+    /**
+     * @return 已写入的样本数据字节数
+     */
+    public long dataSize() {
+        return dataSize;
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * 写出剩余数据并在文件头中填入实际长度
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+            ByteBuffer sizes = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            sizes.putInt(0, (int) (36 + dataSize));
+            writeFully(sizes, 4);    // chunk size
+            sizes.clear();
+            sizes.putInt(0, (int) dataSize);
+            writeFully(sizes, 40);   // subchunk 2 size
+        } finally {
+            channel.close();
+        }
+    }
+
+    // 从position开始写入src的全部剩余字节，FileChannel的一次写入不保证全部写完
+    private void writeFully(ByteBuffer src, long position) throws IOException {
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+
+    /**
+     * 写入44字节的WAV头部
+     * @param dataSize 样本数据的字节数
+     */
+    static void putHeader(ByteBuffer out, int channelCount, int sampleRate, int bitsPerSample, long dataSize) {
+        ByteOrder order = out.order();
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        // WAVE RIFF header
+        putId(out, "RIFF"); // chunk id
+        out.putInt((int) (36 + dataSize)); // chunk size
+        putId(out, "WAVE"); // format
+
+        // SUB CHUNK 1 (FORMAT)
+        putId(out, "fmt "); // subchunk 1 id
+        out.putInt(16); // subchunk 1 size (PCM的fmt块固定16字节，与bitsPerSample无关)
+        out.putShort((short) 1); // audio format (1 = PCM)
+        out.putShort((short) channelCount); // number of channelCount
+        out.putInt(sampleRate); // sample rate
+        out.putInt(sampleRate * channelCount * bitsPerSample / 8); // byte rate
+        out.putShort((short) (channelCount * bitsPerSample / 8)); // block align
+        out.putShort((short) bitsPerSample); // bits per sample
+
+        // SUB CHUNK 2 (AUDIO DATA)
+        putId(out, "data"); // subchunk 2 id
+        out.putInt((int) dataSize); // subchunk 2 size
+        out.order(order);
+    }
+
+    private static void putId(ByteBuffer out, String id) {
+        for (int i = 0; i < id.length(); i++) {
+            out.put((byte) id.charAt(i));
+        }
+    }
+}
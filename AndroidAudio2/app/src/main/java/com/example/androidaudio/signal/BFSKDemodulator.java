@@ -1,17 +1,12 @@
 package com.example.androidaudio.signal;
 
-import android.util.Log;
-
-import org.apache.commons.math3.complex.Complex;
-import org.apache.commons.math3.util.FastMath;
-
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-public class BFSKDemodulator {
+public class BFSKDemodulator implements Demodulator {
    private final double fs = 48000;
    private final double fc;    // 载波频率
    private final double fd;    // 调制频率
@@ -23,135 +18,198 @@ public class BFSKDemodulator {
    private final int preamble_c = 2;
    private final byte epilogue = (byte)0b11111111;
    private final int epilogue_c = 1;
-   
+   private static final int STFT_CHUNK = 1024;  // 每个并行任务至少计算的窗口数
+   private static final double GATE = 100;      // 有信号时能量需高出噪声底的倍数(20dB)
+   private static final double PARTIAL_SYMBOL = 0.75;  // 末尾不完整的符号至少覆盖的比例
+   private static final double PRESENCE = 0.01;     // 没有噪声底时，有信号的能量相对前导码能量的下限(-20dB)
+   private static final double NOISE_WINDOW = 1;    // 噪声底取最小值的时间(s)，也是帧前用来估计噪声底的最长时间
+   private final int samplesPerSymbol;
+   private final PreambleDetector preambleDetector;
+   private final FecCodec codec;
+   private final int noiseHops;
+   private final DemodMetrics metrics;
+
    public BFSKDemodulator(double fc, double fd, double symbolPeriod) {
+      this(fc, fd, symbolPeriod, FecCodec.NONE);
+   }
+
+   /**
+    * @param codec 负载的纠错编码，需与调制端相同
+    */
+   public BFSKDemodulator(double fc, double fd, double symbolPeriod, FecCodec codec) {
+      this(fc, fd, symbolPeriod, codec, DemodMetrics.NONE);
+   }
+
+   /**
+    * @param metrics 各阶段的耗时、帧统计和调试输出
+    */
+   public BFSKDemodulator(double fc, double fd, double symbolPeriod, FecCodec codec, DemodMetrics metrics) {
       this.fc = fc;
       this.fd = fd;
       this.symbolPeriod = symbolPeriod;
       this.f0 = fc - fd;
       this.f1 = fc + fd;
+      this.samplesPerSymbol = Math.toIntExact(Math.round(symbolPeriod * fs));
+      this.preambleDetector = new PreambleDetector(fs, f0, f1, samplesPerSymbol);
+      this.codec = codec;
+      this.noiseHops = (int) (NOISE_WINDOW * fs / d);
+      this.metrics = metrics;
    }
 
-    /*
-     * DFT(离散傅里叶变换)
-     * @param data
-     * @param k
-     */
-    
-    private Complex DFT(List<Double> data, int k) {
-        Complex result = new Complex(0, 0);
-        int N = data.size();
-        for (int i = 0; i < N; i++) {
-            Complex x_i = new Complex(data.get(i), 0);
-            Complex e_pow = (new Complex(Math.E)).pow(new Complex(0, -2 * Math.PI * i * k / N));
-            // sum of data[i]*e^(-2πik/N)
-            result = result.add(x_i.multiply(e_pow));
-        }
-        return result;
-    }
-
-    /*
-     * FT(傅里叶变换)
-     * @param data 待分析的数据
-     * @param f 分析的频率
-     */
-    private Complex FT(List<Double> data, double f) {
-        int k = (int) Math.round(f * data.size() / fs);
-        return DFT(data, k);
-    }
-
-
     /*
      * STFT(Short Time Fourier Transform)短时傅里叶变换
-     * 
+     * 每个窗口只计算fs中的几个频点，用Goertzel算法(ToneDetector)代替逐点DFT
+     * 各窗口相互独立，窗口数较多时按窗口区间拆分到ForkJoinPool中并行计算，
+     * 每个区间自己读取所需的样本(相邻区间的窗口重叠N-d个样本)，结果与顺序计算完全相同
+     *
      * @param fs
      * @param data
+     * @param origin 第一个窗口的起点，之前的样本不参与计算
      */
-    private ArrayList<List<Double>> STFT(double[] fs, double[] data) {
-        ArrayList<List<Double>> result = new ArrayList<>();
-        for (int i = 0; i < fs.length; i++) {
-           result.add(new ArrayList<>());
+    private Spectrum STFT(double[] fs, Samples data, int origin) {
+        int length = data.length() - origin;
+        int frames = length < d ? 0 : (length - d) / d + 1;
+        double[][] result = new double[fs.length][frames];
+        ToneDetector detector = new ToneDetector(this.fs, fs, N);
+        if (frames < 2 * STFT_CHUNK) {
+            stft_range(detector, data, origin, length, result, 0, frames);
+        } else {
+            ForkJoinPool.commonPool().invoke(
+                    new STFTTask(detector, data, origin, length, result, 0, frames));
         }
-        List<Double> dataList = Arrays.stream(data).boxed().collect(Collectors.toList());
-        for (int i = 0; i < data.length -d + 1; i += d){
+        return new Spectrum(result);
+    }
+
+    // 计算第 [from, to) 个窗口
+    private void stft_range(ToneDetector detector, Samples data, int origin, int length,
+                            double[][] result, int from, int to) {
+        Window window = new Window(N, data.single());
+        for (int t = from; t < to; t++){
             // select a window, length N
-            List<Double> subData = dataList.subList(i, Math.min(i + N, data.length));
+            int i = t * d;
+            int len = Math.min(N, length - i);
+            window.read(data, origin + i, 0, len);
             // calculate the FT result of each frequency in fs
-            for (int j = 0; j < fs.length; j++) {
-                Complex complex = FT(subData, fs[j]);
-                result.get(j).add(complex.abs());
+            for (int j = 0; j < result.length; j++) {
+                result[j][t] = window.magnitude(detector, len, j);
             }
         }
-        return result;
     }
 
+    // 一个STFT窗口的样本，双精度的信号用double[]，单精度的信号(Samples.single)用float[]，
+    // 两种精度走各自的ToneDetector.magnitude，解调结果可以互相比较
+    private static final class Window {
+        private final double[] d;
+        private final float[] f;
+
+        Window(int size, boolean single) {
+            this.d = single ? null : new double[size];
+            this.f = single ? new float[size] : null;
+        }
+
+        // 读取 signal[index, index+len) 写入窗口的 [off, off+len)
+        void read(Samples signal, int index, int off, int len) {
+            if (f != null) {
+                signal.get(index, f, off, len);
+            } else {
+                signal.get(index, d, off, len);
+            }
+        }
 
-    // trim the spectrum to remove the noise
-    private List<List<Double>> trim_spectrum(List<List<Double>> X) {
-        double[] energy = new double[X.get(0).size()];
-        for (int j = 0;j < X.size();j++){
-            List<Double> a = X.get(j);
-            for (int i = 0;i < a.size();i++){
-                energy[i] += a.get(i) * a.get(i);
+        // 窗口的前len个样本置0
+        void clear(int len) {
+            if (f != null) {
+                Arrays.fill(f, 0, len, 0);
+            } else {
+                Arrays.fill(d, 0, len, 0);
             }
         }
 
-        double max = 0;
-        for (int i = 0;i < energy.length;i++){
-            if (energy[i] > max) max = energy[i];
+        // 窗口前len个样本在第j个频点上的幅值
+        double magnitude(ToneDetector detector, int len, int j) {
+            return f != null ? detector.magnitude(f, 0, len, j) : detector.magnitude(d, 0, len, j);
         }
+    }
 
-        double threshold = max * 0.01;
-        int st = IntStream.range(0, energy.length)
-                .filter(v -> energy[v] > threshold)
-                .findFirst()
-                .orElse(-1);
-        int ed = IntStream.range(0, energy.length)
-                .map(v -> energy.length - 1 - v)
-                .filter(v -> energy[v] > threshold)
-                .findFirst()
-                .orElse(-1);
+    // 二分窗口区间，直到不超过STFT_CHUNK个窗口
+    // ForkJoinTask实现了Serializable，但任务只在线程池中执行，从不序列化
+    @SuppressWarnings("serial")
+    private class STFTTask extends RecursiveAction {
+        private final ToneDetector detector;
+        private final Samples data;
+        private final int origin, length;
+        private final double[][] result;
+        private final int from, to;
 
+        STFTTask(ToneDetector detector, Samples data, int origin, int length,
+                 double[][] result, int from, int to) {
+            this.detector = detector;
+            this.data = data;
+            this.origin = origin;
+            this.length = length;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
 
-        ArrayList<List<Double>> rtn = new ArrayList<>();
-        for (int j = 0;j < X.size();j++) {
-            if (st < 0 || ed < 0) rtn.add(new ArrayList<>());
-            else rtn.add(X.get(j).subList(st, ed));
+        @Override
+        protected void compute() {
+            if (to - from <= STFT_CHUNK) {
+                stft_range(detector, data, origin, length, result, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new STFTTask(detector, data, origin, length, result, from, mid),
+                    new STFTTask(detector, data, origin, length, result, mid, to));
         }
-        return rtn;
     }
 
-    // turn the data sequence into a binary sequence by thresholding
-    private List<Double> thresholding(List<List<Double>> data) {
-        List<Double> e0 = data.get(0);
-        List<Double> e1 = data.get(1);
-        List<Double> result = new ArrayList<>();
-        for (int i = 0; i < e0.size(); i++){
-            // thresholding by binarization function v=1/(1+e^(-30*(e0-e1)))
-            double v = 1 / (1 + FastMath.pow(e1.get(i) / e0.get(i), -30));
-            result.add(v);
-        }
-        return result;
-    }
 
-    // find the preamble in the data
-    private int code_at(List<Double> data, int l, int r){
-        int high = 0;
-        int low = 0;
-        for (int i = l; i < r; i++){
-            if (i >= data.size()){
-                break;
-            }
-            else if (data.get(i) > 0.9){
-                high++;
+    // trim the spectrum to remove the noise, scanning forward only once
+    // 任一频点的能量高出该频点的噪声底(NoiseTracker)20dB即认为有信号，噪声底只在信号开始之前更新；
+    // 前prime帧不参与解调，其中前clean帧的窗口完全在帧起点之前，只用这些帧估计噪声底。
+    // 帧前的噪声不够估计噪声底时改用相对门限：能量第一次低于前导码平均能量的1%即认为信号结束
+    // st >= 0 means the start is already known (from the preamble), only the tail is trimmed
+    private Spectrum trim_spectrum(Spectrum X, int prime, int clean, int st, NoiseTracker noise) {
+        double[] energy = new double[X.tracks()];
+        double level = -1;
+        int ed = -1;
+        for (int i = 0; i < X.length(); i++) {
+            double sum = 0;
+            for (int j = 0; j < energy.length; j++) {
+                double a = X.get(j, i);
+                energy[j] = a * a;
+                sum += energy[j];
             }
-            else if (data.get(i) < 0.1){
-                low++;
+            if (i == prime && st >= 0 && !noise.ready()) level = preamble_level(X, prime) * PRESENCE;
+            boolean active = level >= 0 ? sum > level : noise.active(energy, GATE);
+            if (i >= prime && active) {
+                if (st < 0) st = i - prime;
+                ed = i - prime;
+            } else if (level >= 0 && ed >= 0) {
+                // 与decode_frame相同，第一次低于相对门限即信号结束，之后的噪声峰值不再计入
+                break;
             }
+            if (!active && (i < clean || st < 0)) noise.update(energy);
         }
-        return high > low ? 1 : 0;
+
+        if (st < 0 || ed < 0) return X.view(0, 0);
+        // 窗口与信号稍有重叠就会超过门限，最后一个有信号的窗口中心在信号结束之后约半个窗口
+        return X.view(prime + st, prime + Math.max(st, ed - N / 2 / d));
     }
 
+    // 从第from帧开始的前导码各窗口的平均能量(各频点之和)
+    private double preamble_level(Spectrum X, int from) {
+        int to = Math.min(X.length(), from + preamble_c * 8 * samplesPerSymbol / d);
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            for (int j = 0; j < X.tracks(); j++) {
+                double a = X.get(j, i);
+                sum += a * a;
+            }
+        }
+        return to > from ? sum / (to - from) : 0;
+    }
 
     // count the number of 1s in a byte
     private int count_ones(int x) {
@@ -184,74 +242,335 @@ public class BFSKDemodulator {
     //     return bytes;
     // }
      public DecodeResult getData(double[] signal) {
-        Log.d("BFSK", "f0: " + f0);
-        Log.d("BFSK", "f1: " + f1);
+        return getData(Samples.of(signal));
+     }
+
+    /**
+     * 解调一段信号，信号按STFT窗口逐段读取，可以是内存映射的PCM文件
+     */
+     @Override
+     public DecodeResult getData(Samples signal) {
+        return getData(signal, null);
+     }
 
-        List<List<Double>> X = STFT(new double[]{f0, f1}, signal);
-        X = trim_spectrum(X);
-        List<Double> val = thresholding(X);
+    /**
+     * 整段信号f0/f1两个频点的STFT，第t个窗口从第t·d个样本开始
+     * 结果与符号时间无关，同一段录音换符号时间重新解调时可以复用，见SpectrumCache
+     */
+    public Spectrum spectrum(Samples signal) {
+        return STFT(new double[]{f0, f1}, signal, 0);
+    }
 
-        List<Integer> code = new ArrayList<>();
-        for (int i = 0; true; i++) {
-            int l = (int) Math.round(i * symbolPeriod * fs / d);
-            int r = (int) Math.round((i+1) * symbolPeriod * fs / d);
-            if(l > val.size()) break;
-            int c = code_at(val, l, r);
-            code.add(c);
+    /**
+     * @return 决定spectrum()结果的参数，相同时两个解调器的spectrum()可以互换
+     */
+    String spectrumKey() {
+        return "fs=" + fs + ",f0=" + f0 + ",f1=" + f1 + ",N=" + N + ",d=" + d;
+    }
+
+    /**
+     * 用已经算好的频谱解调
+     * @param X spectrum(signal)的结果，为null时只计算需要的部分
+     */
+    public DecodeResult getData(Samples signal, Spectrum X) {
+        if (metrics.debugEnabled()) {
+            metrics.debug("BFSK", "f0: " + f0);
+            metrics.debug("BFSK", "f1: " + f1);
+        }
+        if (codec != FecCodec.NONE) {
+            // 编码后的负载中可能出现结束码，只能按长度字段逐帧解调
+            List<DecodeResult> frames = getFrames(signal, X, FrameAssembler.MAX_CODED_PAYLOAD);
+            if (frames.isEmpty()) return new DecodeResult(new byte[]{}, 1, "Preamble not found");
+            return frames.get(0);
         }
 
-        Log.d("BFSK", "Decode raw: " + code.toString());
+        // 用前导码匹配滤波确定帧起点，窗口固定从d的整数倍开始(与spectrum()相同)，
+        // 帧起点与第一个窗口中心的偏差交给SymbolTracker；
+        // 之前最多NOISE_WINDOW秒的样本只用来估计噪声底；找不到前导码时退回按噪声门限裁剪
+        StageClock clock = StageClock.start(metrics);
+        int start = preambleDetector.find(signal);
+        clock.lap(DemodMetrics.Stage.PREAMBLE);
+        if (metrics.debugEnabled()) metrics.debug("BFSK", "Preamble at: " + start);
+        NoiseTracker noise = new NoiseTracker(2, noiseHops);
+        double begin = 0;
+        if (start >= 0) {
+            int first = Math.max(0, Math.floorDiv(start - N / 2, d));
+            int prime = Math.min(noiseHops, first);
+            // 窗口[t·d, t·d+N)完全在帧起点之前的帧才是纯噪声
+            int clean = Math.max(0, Math.min(prime, Math.floorDiv(start - N, d) + 1 - (first - prime)));
+            begin = (start - N / 2 - first * d) / (double) d;
+            X = X != null ? X.view(first - prime, X.length()) : STFT(new double[]{f0, f1}, signal, (first - prime) * d);
+            clock.lap(DemodMetrics.Stage.STFT);
+            X = trim_spectrum(X, prime, clean, 0, noise);
+        } else {
+            if (X == null) X = spectrum(signal);
+            clock.lap(DemodMetrics.Stage.STFT);
+            X = trim_spectrum(X, 0, 0, -1, noise);
+        }
+        clock.lap(DemodMetrics.Stage.TRIM);
+        // 符号边界由SymbolTracker逐个跟踪，收发两端的时钟偏差不会随消息变长而累积
+        SymbolTracker tracker = new SymbolTracker(N, d, symbolPeriod * fs);
+        tracker.reset(begin);
+        byte[] code = new byte[X.length()];
+        float[] llr = new float[X.length()];
+        int code_len = 0;
+        double energy = 0;      // 完整符号的能量之和，用于估计信噪比
+        int symbols = 0;
+        boolean ended = false;
+        for (int i = 0; i < X.length(); i++) {
+            ended = tracker.hop(X.get(0, i), X.get(1, i));
+            if (ended) {
+                energy += tracker.symbol().energy();
+                symbols++;
+                code[code_len] = (byte) tracker.symbol().bit();
+                llr[code_len++] = (float) tracker.symbol().llr();
+            }
+        }
+        if (!ended && tracker.symbol().hops() >= PARTIAL_SYMBOL * samplesPerSymbol / d) {
+            // 最后一个不完整的符号，只剩一小段时多半是信号结束后的余响或噪声，丢弃
+            code[code_len] = (byte) tracker.symbol().bit();
+            llr[code_len++] = (float) tracker.symbol().llr();
+        }
+        code = Arrays.copyOf(code, code_len);
+        llr = Arrays.copyOf(llr, code_len);
+        clock.lap(DemodMetrics.Stage.SLICE);
+        if (metrics.debugEnabled()) {
+            metrics.debug("BFSK", "Symbol rate error: " + (tracker.rate() - 1));
+            metrics.debug("BFSK", "Decode raw: " + DecodeResult.code_string(code));
+        }
 
-        ArrayList<Integer> msg = new ArrayList<>();
-        int msg_len = (int)Math.ceil(code.size() / 8.0);
-        msg.ensureCapacity(msg_len);
+        int msg_len = (int)Math.ceil(code.length / 8.0);
+        byte[] msg = new byte[msg_len];
         for(int i = 0;i < msg_len;i++){
             int b = 0;
             for(int j = 0;j < 8;j++){
                 int k = i * 8 + j;
-                int bit = k < code.size() ? code.get(k) : 1;
+                int bit = k < code.length ? code[k] : 1;
                 b |= (bit<<j);
             }
-            msg.add(b);
+            msg[i] = (byte) b;
         }
-        Log.d("BFSK", "Decode msg: " + msg.toString());
+        if (metrics.debugEnabled()) metrics.debug("BFSK", "Decode msg: " + msg_string(msg));
 
         int error_bit = 0;
-        if(msg.size() < preamble_c + epilogue_c) {
+        if(msg.length < preamble_c + epilogue_c) {
             return new DecodeResult(new byte[]{}, 1,new String("Message too short"));
         }
 
         for(int i = 0;i < preamble_c;i++){
-            int e = msg.get(i) ^ preamble;
+            int e = msg[i] ^ preamble;
             error_bit += count_ones(e);
         }
 
-        for(int j = msg.size() - epilogue_c;j < msg.size();j++){
-            int e = msg.get(j) ^ epilogue;
+        for(int j = msg.length - epilogue_c;j < msg.length;j++){
+            int e = msg[j] ^ epilogue;
             error_bit += count_ones(e);
         }
 
-        byte[] bytes = new byte[msg.size() - preamble_c - epilogue_c];
-        for (int i = 0;i < bytes.length;i++){
-            bytes[i] = msg.get(i + preamble_c).byteValue();
-        }
+        byte[] bytes = new byte[msg.length - preamble_c - epilogue_c];
+        System.arraycopy(msg, preamble_c, bytes, 0, bytes.length);
 
-        return new DecodeResult(
+        DecodeResult rst = new DecodeResult(
                 bytes,
                 error_bit / 8.0 / (preamble_c + epilogue_c),
-                code.toString()
+                code,
+                start
         );
+        rst.llr = llr;
+        clock.lap(DemodMetrics.Stage.FRAME);
+        if (metrics.enabled()) {
+            metrics.frame(error_bit, symbols > 0 ? snr(energy / symbols, noise) : Double.NaN);
+        }
+        return rst;
+    }
+
+    // 符号内每一步的平均能量(两个频点之和，含噪声)相对单个频点噪声底的信噪比(dB)
+    private static double snr(double energy, NoiseTracker noise) {
+        if (!noise.ready()) return Double.NaN;
+        double floor = noise.floor(0) + noise.floor(1);
+        return 10 * Math.log10(Math.max(energy - floor, 0) / (floor / 2));
+    }
+
+    /**
+     * 解调一段包含多个帧的信号，例如长时间的录音
+     * 从头向后查找前导码，找到后从前导码起逐个符号判决直到结束码，再从帧尾继续查找下一帧，
+     * 整段信号只向前扫描一遍，不需要对片段反复调用getData
+     * @param maxPayload 每帧负载的最大字节数
+     * @return 按出现顺序排列的各帧，DecodeResult.offset为帧起点的样本位置
+     */
+    @Override
+    public List<DecodeResult> getFrames(Samples signal, int maxPayload) {
+        return getFrames(signal, null, maxPayload);
+    }
+
+    /**
+     * 用已经算好的频谱解调多个帧，各步的幅值直接从X中读取
+     * @param X spectrum(signal)的结果，为null时逐步计算
+     */
+    public List<DecodeResult> getFrames(Samples signal, Spectrum X, int maxPayload) {
+        List<DecodeResult> frames = new ArrayList<>();
+        FrameAssembler assembler = new FrameAssembler(maxPayload, 4, codec);
+        ToneDetector detector = new ToneDetector(fs, new double[]{f0, f1}, N);
+        Window window = new Window(N, signal.single());
+        SymbolTracker tracker = new SymbolTracker(N, d, samplesPerSymbol);
+        StageClock clock = StageClock.start(metrics);
+        int from = 0;
+        int start;
+        while ((start = preambleDetector.find(signal, from)) >= 0) {
+            clock.lap(DemodMetrics.Stage.PREAMBLE);
+            int end = decode_frame(signal, X, start, detector, window, tracker, assembler);
+            clock.lap(DemodMetrics.Stage.SLICE);
+            if (assembler.complete()) {
+                DecodeResult rst = assembler.result(start);
+                clock.lap(DemodMetrics.Stage.FRAME);
+                if (metrics.enabled()) {
+                    metrics.frame(assembler.checkErrors(), frame_snr(signal, X, from, start, end, detector, window));
+                }
+                if (metrics.debugEnabled()) metrics.debug("BFSK", "Frame at " + start + ": " + msg_string(rst.msg));
+                frames.add(rst);
+                from = end;
+            } else {
+                // 不是有效的帧，跳过这个位置继续查找
+                from = start + samplesPerSymbol;
+            }
+        }
+        clock.lap(DemodMetrics.Stage.PREAMBLE);
+        return frames;
+    }
+
+    // 从start开始逐步取f0/f1的幅值，由SymbolTracker跟踪符号边界并切分成符号
+    // 有频谱X时从中读取，窗口从d的整数倍开始，帧起点与窗口中心的偏差交给SymbolTracker；
+    // 没有时逐步计算，第一个窗口的中心对准帧起点
+    // 遇到结束码、信号能量低于前导码的1%或者信号结束时停止，返回帧尾的样本位置
+    private int decode_frame(Samples signal, Spectrum X, int start, ToneDetector detector, Window window,
+                             SymbolTracker tracker, FrameAssembler assembler) {
+        assembler.reset();
+        int origin = X != null ? Math.max(0, Math.floorDiv(start - N / 2, d)) * d : start - N / 2;
+        tracker.reset((start - N / 2 - origin) / (double) d);
+        int length = signal.length();
+        int preamble_bits = preamble_c * 8;
+        double preamble_energy = 0;
+        int symbol = 0;
+        for (int t = 0; ; t++) {
+            int i = origin + t * d;
+            if (i + N > length) {
+                assembler.finish();
+                return start + t * d;
+            }
+            double m0, m1;
+            if (X != null) {
+                m0 = X.get(0, i / d);
+                m1 = X.get(1, i / d);
+            } else {
+                int skip = Math.max(0, -i);
+                window.clear(skip);
+                window.read(signal, i + skip, skip, N - skip);
+                m0 = window.magnitude(detector, N, 0);
+                m1 = window.magnitude(detector, N, 1);
+            }
+            if (!tracker.hop(m0, m1)) {
+                continue;
+            }
+            SymbolSlicer slicer = tracker.symbol();
+            double e = slicer.energy();
+            if (symbol < preamble_bits) {
+                preamble_energy += e / preamble_bits;
+            } else if (e < preamble_energy * PRESENCE) {
+                // 信号中断，按已收到的部分结束
+                assembler.finish();
+                return start + (t + 1) * d;
+            }
+            symbol++;
+            if (!assembler.push(slicer.bit(), slicer.probability()) || assembler.complete()) {
+                return start + (t + 1) * d;
+            }
+        }
+    }
+
+    // 帧的信噪比(dB)，只在统计时计算，定义与getData相同：
+    // 帧前(不早于from)最多NOISE_WINDOW秒、窗口完全在帧起点之前的各步估计噪声底，
+    // 窗口完全在 [start, end) 内的各步的平均能量作为信号能量；帧前的步数不够估计噪声底时为NaN
+    private double frame_snr(Samples signal, Spectrum X, int from, int start, int end,
+                             ToneDetector detector, Window window) {
+        NoiseTracker noise = new NoiseTracker(2, noiseHops);
+        double[] energy = new double[2];
+        int last = Math.floorDiv(start - N, d);
+        for (int t = Math.max((from + d - 1) / d, last - noiseHops + 1); t <= last; t++) {
+            hop_energy(signal, X, t, detector, window, energy);
+            noise.update(energy);
+        }
+        end = Math.min(end, signal.length());
+        double sum = 0;
+        int hops = 0;
+        for (int t = (start + d - 1) / d; t * d + N <= end; t++) {
+            hop_energy(signal, X, t, detector, window, energy);
+            sum += energy[0] + energy[1];
+            hops++;
+        }
+        return hops > 0 ? snr(sum / hops, noise) : Double.NaN;
+    }
+
+    // 第t个窗口(起点t·d)上f0/f1的能量，有频谱X时从中读取
+    private void hop_energy(Samples signal, Spectrum X, int t, ToneDetector detector, Window window,
+                            double[] energy) {
+        if (X == null) window.read(signal, t * d, 0, N);
+        for (int j = 0; j < 2; j++) {
+            double m = X != null ? X.get(j, t) : window.magnitude(detector, N, j);
+            energy[j] = m * m;
+        }
+    }
+
+    // unsigned byte values, e.g. [85, 85, 255]
+    private static String msg_string(byte[] msg) {
+        StringBuilder sb = new StringBuilder(msg.length * 5 + 2).append('[');
+        for (int i = 0; i < msg.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(msg[i] & 0xff);
+        }
+        return sb.append(']').toString();
     }
 
     public static class DecodeResult {
         public byte[] msg;
         public double error;
-        public String code;
+        public String code;     // 没有解出帧时的原因，解出帧时为null
+        public byte[] bits;     // 整帧判决出的比特(0/1)，没有解出帧时为null
+        public long offset;     // 帧起点在信号中的样本位置，未知时为-1
+        public float[] llr;     // 每个bit的置信度 ln(E1/E0)(见SymbolSlicer)，大于0为1，绝对值为可靠程度，未知时为null
 
+        /**
+         * 没有解出帧
+         * @param code 原因
+         */
         public DecodeResult(byte[] msg, double error, String code) {
             this.msg = msg;
             this.error = error;
             this.code = code;
+            this.offset = -1;
+        }
+
+        public DecodeResult(byte[] msg, double error, byte[] bits, long offset) {
+            this.msg = msg;
+            this.error = error;
+            this.bits = bits;
+            this.offset = offset;
+        }
+
+        /**
+         * @return 比特序列，与List.toString()格式相同，例如[0, 1, 1]；没有解出帧时为原因
+         * 只在显示时调用，解调过程中不拼接字符串
+         */
+        public String codeString() {
+            return bits == null ? code : code_string(bits);
+        }
+
+        static String code_string(byte[] code) {
+            StringBuilder sb = new StringBuilder(code.length * 3 + 2).append('[');
+            for (int i = 0; i < code.length; i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(code[i]);
+            }
+            return sb.append(']').toString();
         }
     }
 }
@@ -2,17 +2,24 @@ package com.example.androidaudio.signal;
 
 import androidx.annotation.NonNull;
 
-import java.nio.DoubleBuffer;
-
 public class BFSKModulator implements Modulator {
     private final double sampleRate;
     private final double frequencyDeviation;
     private final double symbolPeriod;
+    private final FecCodec codec;
 
     public BFSKModulator(double sampleRate, double frequencyDeviation, double symbolPeriod) {
+        this(sampleRate, frequencyDeviation, symbolPeriod, FecCodec.NONE);
+    }
+
+    /**
+     * @param codec 负载的纠错编码，帧格式见FrameAssembler
+     */
+    public BFSKModulator(double sampleRate, double frequencyDeviation, double symbolPeriod, FecCodec codec) {
         this.sampleRate = sampleRate;
         this.frequencyDeviation = frequencyDeviation;
         this.symbolPeriod = symbolPeriod;
+        this.codec = codec;
     }
 
     /**
@@ -23,55 +30,143 @@ public class BFSKModulator implements Modulator {
      */
     @Override
     public double[] getRealSignal(double carrierFrequency, @NonNull byte[] dataToModulate) {
-        final int preambleLength = 2;
-        final byte premable = 0b01010101;
-        final int epilogueLegnth = 1;
-        final byte epilogue = (byte) 0b11111111;
-
-        int samplesPerSymbol = Math.toIntExact(Math.round(symbolPeriod * sampleRate));
-        DoubleBuffer doubles = DoubleBuffer.allocate(
-                (dataToModulate.length + preambleLength + epilogueLegnth)
-                        * Byte.SIZE * samplesPerSymbol
-        );
+        double[] signal = new double[getSignalLength(dataToModulate.length)];
+        getRealSignal(carrierFrequency, dataToModulate, signal, 0);
+        return signal;
+    }
+
+    /**
+     * 获取单精度的调制信号，内存占用是double版本的一半
+     */
+    public float[] getRealSignalFloat(double carrierFrequency, @NonNull byte[] dataToModulate) {
+        float[] signal = new float[getSignalLength(dataToModulate.length)];
+        getRealSignal(carrierFrequency, dataToModulate, signal, 0);
+        return signal;
+    }
+
+    /**
+     * 调制后信号的样本数
+     * @param dataLength 待调制数据的字节数
+     */
+    public int getSignalLength(int dataLength) {
+        int bytes = FrameAssembler.PREAMBLE_C + FrameAssembler.bodyLength(codec, dataLength) + FrameAssembler.EPILOGUE_C;
+        return bytes * Byte.SIZE * samplesPerSymbol();
+    }
+
+    /**
+     * 将调制的实数信号写入调用方提供的缓冲区
+     * 各符号之间相位连续，切换频率时不会产生跳变
+     * @param carrierFrequency 载波频率
+     * @param dataToModulate 待调制的数据
+     * @param out 输出缓冲区，长度至少为 off + getSignalLength(dataToModulate.length)
+     * @param off 写入的起点
+     * @return 写入的样本数
+     */
+    public int getRealSignal(double carrierFrequency, @NonNull byte[] dataToModulate, double[] out, int off) {
+        return modulate(carrierFrequency, dataToModulate, (oscillator, p, len) -> oscillator.render(out, p, len), off);
+    }
+
+    /**
+     * 将单精度的调制信号写入调用方提供的缓冲区，其余同double版本
+     */
+    public int getRealSignal(double carrierFrequency, @NonNull byte[] dataToModulate, float[] out, int off) {
+        return modulate(carrierFrequency, dataToModulate, (oscillator, p, len) -> oscillator.render(out, p, len), off);
+    }
+
+    // 把振荡器的输出写入某种类型的缓冲区，调制的循环与缓冲区的类型无关
+    private interface Sink {
+        void render(Oscillator oscillator, int off, int len);
+    }
+
+    // 从off开始依次写入前导码、数据和结束码，返回写入的样本数
+    private int modulate(double carrierFrequency, byte[] dataToModulate, Sink out, int off) {
         double f0 = carrierFrequency - this.frequencyDeviation;
         double f1 = carrierFrequency + this.frequencyDeviation;
+        Oscillator oscillator = new Oscillator(sampleRate);
+        int samplesPerSymbol = samplesPerSymbol();
+        int p = off;
 
-        for(int k = 0;k < preambleLength;k++) {
-            byte d = premable;
-            for (int i = 0; i < 8; i++) {
-                int b = ((d >> i) & 1);
-                double f = b == 1 ? f1 : f0;
-
-                for (int j = 0; j < samplesPerSymbol; j++) {
-                    doubles.put(Math.cos(2 * Math.PI * f * j / sampleRate));
-                }
-            }
+        for (int k = 0; k < FrameAssembler.PREAMBLE_C; k++) {
+            p = putByte(oscillator, FrameAssembler.PREAMBLE, f0, f1, samplesPerSymbol, out, p);
+        }
+        for (byte d : FrameAssembler.body(codec, dataToModulate)) {
+            p = putByte(oscillator, d, f0, f1, samplesPerSymbol, out, p);
         }
+        for (int k = 0; k < FrameAssembler.EPILOGUE_C; k++) {
+            p = putByte(oscillator, FrameAssembler.EPILOGUE, f0, f1, samplesPerSymbol, out, p);
+        }
+        return p - off;
+    }
 
-        for(byte d : dataToModulate) {
-            for (int i = 0;i < 8;i++){
-                int b = ((d>>i) & 1);
-                double f = b == 1 ? f1 : f0;
+    /**
+     * 以流的方式获取调制信号，每次read只生成请求的样本数
+     * 内部只保存当前符号的位置和振荡器相位，内存占用与数据长度无关
+     */
+    @Override
+    public SampleStream openStream(double carrierFrequency, @NonNull byte[] dataToModulate) {
+        return new BFSKStream(carrierFrequency, FrameAssembler.body(codec, dataToModulate));
+    }
 
-                for (int j = 0;j < samplesPerSymbol;j++) {
-                    doubles.put(Math.cos(2 * Math.PI * f * j / sampleRate));
-                }
-            }
-        }
+    private final class BFSKStream implements SampleStream {
+        private final double f0, f1;
+        private final byte[] data;
+        private final Oscillator oscillator = new Oscillator(sampleRate);
+        private final int samplesPerSymbol = samplesPerSymbol();
+        private final int symbols;
+        private int symbol = 0;     // 当前符号的序号
+        private int inSymbol = 0;   // 当前符号内已生成的样本数
 
-        for(int k = 0;k < epilogueLegnth;k++) {
-            byte d = epilogue;
-            for (int i = 0; i < 8; i++) {
-                int b = ((d >> i) & 1);
-                double f = b == 1 ? f1 : f0;
+        BFSKStream(double carrierFrequency, byte[] data) {
+            this.f0 = carrierFrequency - frequencyDeviation;
+            this.f1 = carrierFrequency + frequencyDeviation;
+            this.data = data;
+            this.symbols = (data.length + FrameAssembler.PREAMBLE_C + FrameAssembler.EPILOGUE_C) * Byte.SIZE;
+        }
 
-                for (int j = 0; j < samplesPerSymbol; j++) {
-                    doubles.put(Math.cos(2 * Math.PI * f * j / sampleRate));
+        @Override
+        public int read(short[] dst, int off, int len) {
+            if (symbol == symbols) return -1;
+            int n = 0;
+            while (n < len && symbol < symbols) {
+                if (inSymbol == 0) {
+                    int b = (byteAt(symbol / 8) >> (symbol % 8)) & 1;
+                    oscillator.setFrequency(b == 1 ? f1 : f0);
+                }
+                int k = Math.min(len - n, samplesPerSymbol - inSymbol);
+                oscillator.render(dst, off + n, k, Short.MAX_VALUE);
+                n += k;
+                inSymbol += k;
+                if (inSymbol == samplesPerSymbol) {
+                    inSymbol = 0;
+                    symbol++;
                 }
             }
+            return n;
         }
 
-        return doubles.array();
+        // 帧内第i个字节：前导码、数据(编码后)、结束码
+        private byte byteAt(int i) {
+            if (i < FrameAssembler.PREAMBLE_C) return FrameAssembler.PREAMBLE;
+            i -= FrameAssembler.PREAMBLE_C;
+            if (i < data.length) return data[i];
+            return FrameAssembler.EPILOGUE;
+        }
+    }
+
+    private int samplesPerSymbol() {
+        return Math.toIntExact(Math.round(symbolPeriod * sampleRate));
+    }
+
+    // 一个byte低位先发，每个bit一个符号
+    private static int putByte(Oscillator oscillator, byte d, double f0, double f1,
+                               int samplesPerSymbol, Sink out, int off) {
+        for (int i = 0; i < 8; i++) {
+            int b = ((d >> i) & 1);
+            oscillator.setFrequency(b == 1 ? f1 : f0);
+            out.render(oscillator, off, samplesPerSymbol);
+            off += samplesPerSymbol;
+        }
+        return off;
     }
 //        int samplesPerSymbol = Math.toIntExact(Math.round(symbolPeriod * sampleRate));
 //        DoubleBuffer doubles = DoubleBuffer.allocate(dataToModulate.length * Byte.SIZE * samplesPerSymbol);
@@ -0,0 +1,190 @@
+package com.example.androidaudio.signal;
+
+/**
+ * 流式BFSK解调器
+ *
+ * 录音线程每读到一段PCM就调用feed，解调器在内部维护最近N个样本的窗口，
+ * 每收到d个新样本计算一次f0/f1的幅值(与BFSKDemodulator的STFT相同的窗口与步长)。
+ * 帧的起点由能量门限检测：f0或f1的能量高出该频点的噪声底(NoiseTracker，无信号时更新)20dB即认为进入帧，
+ * 帧内降到10dB以下、并且低于前导码能量的1%超过一个符号才认为信号中断。
+ * 某个频点上持续的背景音只抬高该频点自己的噪声底，不会挡住帧的开始。
+ * 随后按符号周期切分比特，符号边界由SymbolTracker跟踪，每个比特由SymbolSlicer按符号内积分的能量判决，
+ * 收到结束码后立即通过Listener回调解码结果，延迟约为一个符号周期。
+ * 占用的内存与录音时长无关，只取决于窗口长度和负载上限。
+ */
+public class BFSKStreamDemodulator {
+    /**
+     * 解码结果回调，在调用feed的线程上执行
+     */
+    public interface Listener {
+        void onFrame(BFSKDemodulator.DecodeResult result);
+    }
+
+    private static final int IDLE = 0;      // 等待帧开始
+    private static final int FRAME = 1;     // 正在接收帧
+    private static final int HOLDOFF = 2;   // 帧已结束，等待信号消失
+
+    private static final double GATE = 100;         // 进入帧时能量需高出噪声底的倍数(20dB)
+    private static final double HOLD = 10;          // 帧内能量需高出噪声底的倍数(10dB)
+    private static final double MIN_ENERGY = 1e-2;  // 绝对能量下限，避免静音时噪声底为0
+    private static final double NOISE_WINDOW = 1;   // 噪声底取最小值的时间(s)
+    private static final int PREAMBLE_BITS = FrameAssembler.PREAMBLE_C * Byte.SIZE;
+
+    private final double fs = 48000;
+    private final int N = 500;     // STFT窗口长度
+    private final int d = 100;     // STFT窗口移动步长
+    private final double hopsPerSymbol;
+    private final ToneDetector detector;
+    private final NoiseTracker noise;
+    private final double[] energy = new double[2];
+    private final FrameAssembler assembler;
+    private final Listener listener;
+
+    // 长度2N的环形缓冲，每个样本同时写在pos和pos+N处，窗口 [pos, pos+N) 总是连续的
+    // 只有2N个样本，用double保存，double输入不会被截断
+    private final double[] window;
+    private int pos;
+    private long samples;
+
+    private int state = IDLE;
+    private final SymbolTracker tracker;    // 帧内的符号定时
+    private int quiet;      // 帧内连续低于门限的步数
+    private int symbols;    // 帧内已判决的符号数
+    private double level;   // 前导码每一步的平均能量
+    private long frameStart;    // 帧起点，取进入帧时窗口的起点，误差在一个窗口以内
+
+    /**
+     * @param fc           载波频率
+     * @param fd           调制频偏
+     * @param symbolPeriod 符号时间
+     * @param maxPayload   负载的最大字节数，决定缓冲区大小
+     * @param listener     解码结果回调
+     */
+    public BFSKStreamDemodulator(double fc, double fd, double symbolPeriod, int maxPayload, Listener listener) {
+        this(fc, fd, symbolPeriod, maxPayload, FecCodec.NONE, listener);
+    }
+
+    /**
+     * @param codec 负载的纠错编码，需与调制端相同
+     */
+    public BFSKStreamDemodulator(double fc, double fd, double symbolPeriod, int maxPayload, FecCodec codec,
+                                 Listener listener) {
+        this.hopsPerSymbol = symbolPeriod * fs / d;
+        this.detector = new ToneDetector(fs, new double[]{fc - fd, fc + fd}, N);
+        this.noise = new NoiseTracker(2, (int) (NOISE_WINDOW * fs / d));
+        this.tracker = new SymbolTracker(N, d, symbolPeriod * fs);
+        this.assembler = new FrameAssembler(maxPayload, 4, codec);
+        this.listener = listener;
+        this.window = new double[2 * N];
+    }
+
+    /**
+     * 输入一段16bit PCM样本
+     */
+    public void feed(short[] samples, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            push(samples[i] / 32767.0);
+        }
+    }
+
+    /**
+     * 输入一段[-1, 1]范围的单精度样本
+     */
+    public void feed(float[] samples, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            push(samples[i]);
+        }
+    }
+
+    /**
+     * 输入一段[-1, 1]范围的样本
+     */
+    public void feed(double[] samples, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            push(samples[i]);
+        }
+    }
+
+    /**
+     * 输入结束(如停止录音)时调用，尚未结束的帧按信号中断处理
+     */
+    public void flush() {
+        if (state == FRAME && assembler.finish()) {
+            listener.onFrame(assembler.result(frameStart));
+        }
+        reset();
+    }
+
+    public void reset() {
+        state = IDLE;
+        noise.reset();
+        pos = 0;
+        samples = 0;
+        assembler.reset();
+    }
+
+    private void push(double x) {
+        window[pos] = x;
+        window[pos + N] = x;
+        pos = pos + 1 == N ? 0 : pos + 1;
+        samples++;
+        // 与批量STFT对齐：窗口起点为d的整数倍
+        if (samples >= N && (samples - N) % d == 0) {
+            hop(detector.magnitude(window, pos, N, 0), detector.magnitude(window, pos, N, 1));
+        }
+    }
+
+    private void hop(double m0, double m1) {
+        energy[0] = m0 * m0;
+        energy[1] = m1 * m1;
+        boolean loud = energy[0] + energy[1] > MIN_ENERGY;
+        boolean active = loud && noise.active(energy, GATE);
+        switch (state) {
+            case IDLE:
+                if (!active) {
+                    noise.update(energy);
+                    return;
+                }
+                state = FRAME;
+                frameStart = samples - N;
+                assembler.reset();
+                tracker.reset();
+                quiet = 0;
+                symbols = 0;
+                level = 0;
+                frame_hop(m0, m1, loud);
+                break;
+            case FRAME:
+                frame_hop(m0, m1, loud);
+                break;
+            case HOLDOFF:
+                if (!active) {
+                    noise.update(energy);
+                    state = IDLE;
+                }
+                break;
+        }
+    }
+
+    // 帧内的一步：检查信号是否中断，跟踪符号并拼装帧
+    private void frame_hop(double m0, double m1, boolean loud) {
+        boolean present = noise.active(energy, HOLD) || energy[0] + energy[1] > level * 0.01;
+        quiet = loud && present ? 0 : quiet + 1;
+        if (quiet > hopsPerSymbol) {
+            // 信号中断超过一个符号
+            if (assembler.finish()) listener.onFrame(assembler.result(frameStart));
+            state = HOLDOFF;
+            return;
+        }
+        if (tracker.hop(m0, m1)) {
+            SymbolSlicer slicer = tracker.symbol();
+            if (symbols++ < PREAMBLE_BITS) level += slicer.energy() / PREAMBLE_BITS;
+            if (!assembler.push(slicer.bit(), slicer.probability())) {
+                state = HOLDOFF;
+            } else if (assembler.complete()) {
+                listener.onFrame(assembler.result(frameStart));
+                state = HOLDOFF;
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.androidaudio.signal;
+
+/**
+ * 码率1/2、约束长度7的卷积码，生成多项式 171、133(八进制)，用软判决Viterbi算法解码
+ *
+ * 编码末尾补 K-1 个0使编码器回到零状态，编码后不足一字节的位补0，
+ * 因此 len 字节的数据编码后为 2·len+2 字节。
+ * 分支度量为收到的软判决值与期望bit之差的绝对值之和，64个状态的幸存路径选择
+ * 每一步正好存入一个long，回溯时从零状态开始。
+ * 卷积码本身无法确认解码是否正确：与解码结果重新编码后比较，硬判决错误超过编码bit的1/8时视为无法纠正。
+ */
+public class ConvolutionalCodec implements FecCodec {
+    private static final int K = 7;
+    private static final int STATES = 1 << (K - 1);
+    private static final int G0 = 0171, G1 = 0133;
+
+    // 移位寄存器(最新的bit在最低位)的值 → 输出的两个bit
+    private static final int[] OUTPUT = new int[1 << K];
+
+    static {
+        for (int reg = 0; reg < OUTPUT.length; reg++) {
+            OUTPUT[reg] = Integer.bitCount(reg & G0) & 1 | (Integer.bitCount(reg & G1) & 1) << 1;
+        }
+    }
+
+    // 工作数组
+    private float[] metric = new float[STATES];
+    private float[] next = new float[STATES];
+    private final float[] cost = new float[4];
+    private long[] decisions = new long[0];     // 每一步各状态选择的前驱，按需增长
+
+    @Override
+    public int encodedLength(int dataLength) {
+        return ((dataLength * Byte.SIZE + K - 1) * 2 + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    @Override
+    public void encode(byte[] data, int off, int len, byte[] out, int outOff) {
+        int n = encodedLength(len);
+        for (int i = 0; i < n; i++) out[outOff + i] = 0;
+        int reg = 0;
+        int k = outOff * Byte.SIZE;
+        for (int t = 0; t < len * Byte.SIZE + K - 1; t++) {
+            reg = (reg << 1 | input_bit(data, off, len, t)) & (OUTPUT.length - 1);
+            int o = OUTPUT[reg];
+            out[k / Byte.SIZE] |= (o & 1) << (k % Byte.SIZE);
+            k++;
+            out[k / Byte.SIZE] |= (o >> 1) << (k % Byte.SIZE);
+            k++;
+        }
+    }
+
+    @Override
+    public int decode(float[] soft, int softOff, int len, byte[] out, int outOff) {
+        int steps = len * Byte.SIZE + K - 1;
+        if (decisions.length < steps) decisions = new long[steps];
+
+        for (int s = 0; s < STATES; s++) metric[s] = Float.MAX_VALUE / 2;
+        metric[0] = 0;
+        for (int t = 0; t < steps; t++) {
+            float p0 = soft[softOff + 2 * t];
+            float p1 = soft[softOff + 2 * t + 1];
+            cost[0] = p0 + p1;
+            cost[1] = 1 - p0 + p1;
+            cost[2] = p0 + 1 - p1;
+            cost[3] = 2 - p0 - p1;
+            long decision = 0;
+            // 状态s(最近6个输入)的两个前驱为 s>>1 和 (s>>1)|32，对应的寄存器值为 s 和 s|64
+            for (int s = 0; s < STATES; s++) {
+                float m0 = metric[s >> 1] + cost[OUTPUT[s]];
+                float m1 = metric[(s >> 1) | (STATES >> 1)] + cost[OUTPUT[s | STATES]];
+                if (m1 < m0) {
+                    next[s] = m1;
+                    decision |= 1L << s;
+                } else {
+                    next[s] = m0;
+                }
+            }
+            decisions[t] = decision;
+            float[] swap = metric;
+            metric = next;
+            next = swap;
+        }
+
+        // 从零状态回溯，最后K-1步是补的0
+        for (int i = 0; i < len; i++) out[outOff + i] = 0;
+        int s = 0;
+        for (int t = steps - 1; t >= 0; t--) {
+            if (t < len * Byte.SIZE) {
+                out[outOff + t / Byte.SIZE] |= (s & 1) << (t % Byte.SIZE);
+            }
+            int x = (int) (decisions[t] >>> s) & 1;
+            s = (s >> 1) | (x << (K - 2));
+        }
+
+        // 重新编码，统计硬判决中被纠正的bit数
+        int errors = 0;
+        int reg = 0;
+        for (int t = 0; t < steps; t++) {
+            reg = (reg << 1 | input_bit(out, outOff, len, t)) & (OUTPUT.length - 1);
+            int o = OUTPUT[reg];
+            if ((soft[softOff + 2 * t] > 0.5f) != ((o & 1) != 0)) errors++;
+            if ((soft[softOff + 2 * t + 1] > 0.5f) != ((o & 2) != 0)) errors++;
+        }
+        return errors * Byte.SIZE > steps * 2 ? -1 : errors;
+    }
+
+    // 第t个输入bit，数据之后为0
+    private static int input_bit(byte[] data, int off, int len, int t) {
+        if (t >= len * Byte.SIZE) return 0;
+        return (data[off + t / Byte.SIZE] >> (t % Byte.SIZE)) & 1;
+    }
+}
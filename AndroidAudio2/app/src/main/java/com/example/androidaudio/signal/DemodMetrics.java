@@ -0,0 +1,78 @@
+package com.example.androidaudio.signal;
+
+/**
+ * 解调过程的统计与调试输出
+ *
+ * 解调器在每个阶段结束时报告耗时和内存分配，每解出一帧报告校验位的错误数和信噪比，
+ * 调试信息也从这里输出，信号处理代码本身不依赖android.util.Log。
+ * enabled()为false时解调器不读时钟、不做统计，NONE就是这样的实现；
+ * 调试字符串只在debugEnabled()为true时拼接，只汇总数据的DemodStats不会为此付出开销。
+ */
+public interface DemodMetrics {
+    /**
+     * 解调的各个阶段
+     * PREAMBLE 查找前导码，STFT 计算各窗口的频点幅值，TRIM 估计噪声底并裁剪，
+     * SLICE 符号定时与判决，FRAME 组帧、校验与纠错
+     */
+    enum Stage { PREAMBLE, STFT, TRIM, SLICE, FRAME }
+
+    DemodMetrics NONE = new DemodMetrics() {
+        @Override
+        public boolean enabled() {
+            return false;
+        }
+
+        @Override
+        public boolean debugEnabled() {
+            return false;
+        }
+
+        @Override
+        public long allocatedBytes() {
+            return 0;
+        }
+
+        @Override
+        public void stage(Stage stage, long nanos, long bytes) {
+        }
+
+        @Override
+        public void frame(int checkErrors, double snr) {
+        }
+
+        @Override
+        public void debug(String tag, String message) {
+        }
+    };
+
+    /**
+     * @return 是否需要统计，为false时其余方法都不会被调用
+     */
+    boolean enabled();
+
+    /**
+     * @return 是否输出调试信息，为false时解调器不调用debug，也不拼接调试字符串
+     */
+    boolean debugEnabled();
+
+    /**
+     * @return 当前线程累计分配的字节数，平台不支持时返回0
+     */
+    long allocatedBytes();
+
+    /**
+     * 一个阶段结束
+     * @param nanos 耗时(ns)
+     * @param bytes 解调线程在这个阶段分配的字节数，不含ForkJoinPool中其它线程的分配
+     */
+    void stage(Stage stage, long nanos, long bytes);
+
+    /**
+     * 解出一帧
+     * @param checkErrors 前导码和结束码中的错误比特数
+     * @param snr         信号与单个频点噪声底的能量比(dB)，未知时为NaN
+     */
+    void frame(int checkErrors, double snr);
+
+    void debug(String tag, String message);
+}
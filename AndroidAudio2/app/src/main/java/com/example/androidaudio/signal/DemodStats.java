@@ -0,0 +1,125 @@
+package com.example.androidaudio.signal;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * 汇总解调统计的DemodMetrics：各阶段的次数、总耗时、总分配量，帧数、校验位错误数和信噪比
+ *
+ * snapshot()以扁平的 名称 -> 数值 导出，便于上报到监控面板；方法都是同步的，可以在多个解调线程间共用。
+ * 调试信息默认关闭，需要输出时在子类中覆盖debugEnabled和debug。
+ */
+public class DemodStats implements DemodMetrics {
+    private static final Stage[] STAGES = Stage.values();
+
+    private final LongSupplier allocated;
+    private final long[] count = new long[STAGES.length];
+    private final long[] nanos = new long[STAGES.length];
+    private final long[] bytes = new long[STAGES.length];
+    private long frames;
+    private long checkErrors;
+    private long snrCount;
+    private double snrSum;
+    private double snrMin = Double.POSITIVE_INFINITY;
+
+    public DemodStats() {
+        this(() -> 0);
+    }
+
+    /**
+     * @param allocated 当前线程累计分配的字节数，例如JVM上的 com.sun.management.ThreadMXBean
+     */
+    public DemodStats(LongSupplier allocated) {
+        this.allocated = allocated;
+    }
+
+    @Override
+    public boolean enabled() {
+        return true;
+    }
+
+    @Override
+    public boolean debugEnabled() {
+        return false;
+    }
+
+    @Override
+    public long allocatedBytes() {
+        return allocated.getAsLong();
+    }
+
+    @Override
+    public synchronized void stage(Stage stage, long nanos, long bytes) {
+        int i = stage.ordinal();
+        this.count[i]++;
+        this.nanos[i] += nanos;
+        this.bytes[i] += bytes;
+    }
+
+    @Override
+    public synchronized void frame(int checkErrors, double snr) {
+        frames++;
+        this.checkErrors += checkErrors;
+        if (!Double.isNaN(snr)) {
+            snrCount++;
+            snrSum += snr;
+            snrMin = Math.min(snrMin, snr);
+        }
+    }
+
+    @Override
+    public void debug(String tag, String message) {
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < STAGES.length; i++) {
+            count[i] = 0;
+            nanos[i] = 0;
+            bytes[i] = 0;
+        }
+        frames = 0;
+        checkErrors = 0;
+        snrCount = 0;
+        snrSum = 0;
+        snrMin = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return 当前的统计值，例如 stft.nanos、frames、snr.mean，没有信噪比数据时不含snr项
+     */
+    public synchronized Map<String, Double> snapshot() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Stage stage : STAGES) {
+            String name = stage.name().toLowerCase(Locale.ROOT);
+            int i = stage.ordinal();
+            values.put(name + ".count", (double) count[i]);
+            values.put(name + ".nanos", (double) nanos[i]);
+            values.put(name + ".bytes", (double) bytes[i]);
+        }
+        values.put("frames", (double) frames);
+        values.put("check_errors", (double) checkErrors);
+        if (snrCount > 0) {
+            values.put("snr.mean", snrSum / snrCount);
+            values.put("snr.min", snrMin);
+        }
+        return values;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : STAGES) {
+            int i = stage.ordinal();
+            if (count[i] == 0) continue;
+            sb.append(String.format(Locale.ROOT, "%s %.2fms %dKB, ",
+                    stage.name().toLowerCase(Locale.ROOT), nanos[i] / 1e6, bytes[i] / 1024));
+        }
+        sb.append("frames ").append(frames).append(", check errors ").append(checkErrors);
+        if (snrCount > 0) {
+            sb.append(String.format(Locale.ROOT, ", snr %.1fdB (min %.1fdB)", snrSum / snrCount, snrMin));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.androidaudio.signal;
+
+import java.util.List;
+
+public interface Demodulator {
+    /**
+     * 解调一段只包含一个帧的信号
+     * @param signal 接收到的实信号
+     * @return 解码结果
+     */
+    BFSKDemodulator.DecodeResult getData(Samples signal);
+
+    /**
+     * 解调一段包含多个帧的信号
+     * @param signal 接收到的实信号
+     * @param maxPayload 每帧负载的最大字节数
+     * @return 按出现顺序排列的各帧
+     */
+    List<BFSKDemodulator.DecodeResult> getFrames(Samples signal, int maxPayload);
+}
@@ -0,0 +1,91 @@
+package com.example.androidaudio.signal;
+
+/**
+ * 基2复数FFT，原地计算
+ *
+ * 长度必须是2的幂，旋转因子和位反转表在构造时算好，对象本身不保存中间结果，可以被多个线程共用。
+ * 实部和虚部分两个数组存放，避免创建Complex对象。
+ */
+public class FFT {
+    private final int n;
+    private final double[] cos, sin;   // 旋转因子 e^(-2πik/n)，k < n/2
+    private final int[] rev;           // 位反转置换
+
+    /**
+     * @param n 变换长度，2的幂
+     */
+    public FFT(int n) {
+        if (n < 1 || (n & (n - 1)) != 0) {
+            throw new IllegalArgumentException("FFT size must be a power of 2: " + n);
+        }
+        this.n = n;
+        this.cos = new double[n / 2];
+        this.sin = new double[n / 2];
+        for (int k = 0; k < n / 2; k++) {
+            cos[k] = Math.cos(2 * Math.PI * k / n);
+            sin[k] = -Math.sin(2 * Math.PI * k / n);
+        }
+        this.rev = new int[n];
+        int bits = Integer.numberOfTrailingZeros(n);
+        for (int i = 0; i < n; i++) {
+            rev[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    public int size() {
+        return n;
+    }
+
+    /**
+     * 正变换 X[k] = Σ x[t]·e^(-2πikt/n)
+     */
+    public void forward(double[] re, double[] im) {
+        transform(re, im, false);
+    }
+
+    /**
+     * 逆变换，结果已除以n
+     */
+    public void inverse(double[] re, double[] im) {
+        transform(re, im, true);
+        double scale = 1.0 / n;
+        for (int i = 0; i < n; i++) {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    private void transform(double[] re, double[] im, boolean inverse) {
+        for (int i = 0; i < n; i++) {
+            int j = rev[i];
+            if (j > i) {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+        for (int size = 2; size <= n; size <<= 1) {
+            int half = size >> 1;
+            int step = n / size;
+            for (int start = 0; start < n; start += size) {
+                for (int k = 0; k < half; k++) {
+                    double wr = cos[k * step];
+                    double wi = inverse ? -sin[k * step] : sin[k * step];
+                    int a = start + k, b = a + half;
+                    double tr = re[b] * wr - im[b] * wi;
+                    double ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 不小于n的最小的2的幂
+     */
+    public static int nextPowerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+}
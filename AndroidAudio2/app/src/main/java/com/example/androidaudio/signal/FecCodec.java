@@ -0,0 +1,70 @@
+package com.example.androidaudio.signal;
+
+/**
+ * 前向纠错编码，位于负载字节与调制/解调之间
+ *
+ * 编码输出的字节与普通负载一样按低位先发的顺序逐bit调制；
+ * 解码的输入是每个bit的软判决值(为1的概率，0 ~ 1，即SymbolSlicer.probability的输出)，顺序与发送顺序相同。
+ * 实现在构造时分配好工作数组，编解码过程中不再分配内存，因此实例不是线程安全的，
+ * 调制器和解调器应当各自持有一个实例。
+ */
+public interface FecCodec {
+    /**
+     * 不编码，负载原样发送，帧格式与没有FEC时完全相同
+     */
+    FecCodec NONE = new FecCodec() {
+        @Override
+        public int encodedLength(int dataLength) {
+            return dataLength;
+        }
+
+        @Override
+        public void encode(byte[] data, int off, int len, byte[] out, int outOff) {
+            System.arraycopy(data, off, out, outOff, len);
+        }
+
+        @Override
+        public int decode(float[] soft, int softOff, int len, byte[] out, int outOff) {
+            for (int i = 0; i < len; i++) {
+                out[outOff + i] = FecCodec.hardByte(soft, softOff + i * Byte.SIZE);
+            }
+            return 0;
+        }
+    };
+
+    /**
+     * 由设置值得到编码方式："RS"、"CONV"，其余(包括"NONE")不编码
+     */
+    static FecCodec forName(String name) {
+        if ("RS".equals(name)) return new ReedSolomonCodec(ReedSolomonCodec.DEFAULT_PARITY);
+        if ("CONV".equals(name)) return new ConvolutionalCodec();
+        return NONE;
+    }
+
+    /**
+     * @return dataLength字节的数据编码后的字节数
+     */
+    int encodedLength(int dataLength);
+
+    /**
+     * 编码 data[off, off+len)，写入 out[outOff, outOff+encodedLength(len))
+     */
+    void encode(byte[] data, int off, int len, byte[] out, int outOff);
+
+    /**
+     * 解码 len 字节的数据，输入为 soft[softOff, softOff+encodedLength(len)*8) 的软判决值
+     * @return 纠正的错误数(字节或bit，取决于编码方式)，无法纠正时返回-1，此时out中为未纠正的数据
+     */
+    int decode(float[] soft, int softOff, int len, byte[] out, int outOff);
+
+    /**
+     * 按硬判决(概率大于0.5为1)取出从第bit个软判决值开始的一个字节，低位在前
+     */
+    static byte hardByte(float[] soft, int bit) {
+        int b = 0;
+        for (int j = 0; j < Byte.SIZE; j++) {
+            if (soft[bit + j] > 0.5f) b |= 1 << j;
+        }
+        return (byte) b;
+    }
+}
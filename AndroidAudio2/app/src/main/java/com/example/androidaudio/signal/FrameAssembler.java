@@ -0,0 +1,231 @@
+package com.example.androidaudio.signal;
+
+import java.util.Arrays;
+
+/**
+ * 将逐个判决出的比特拼装成帧
+ *
+ * 帧格式与BFSKModulator一致：2字节前导码 0b01010101，负载，1字节结束码 0b11111111，
+ * 每个字节低位先发。前导码错误过多或负载超出上限时丢弃该帧；
+ * 收到完整的结束码字节即认为帧结束，因此不使用FEC时负载中不能有0xFF字节(body()会拒绝，UTF-8文本不会出现)。
+ * 使用FEC时负载换成 编码后的1字节负载长度 + 编码后的负载，编码后的字节可以是任意值，
+ * 帧长由解出的长度决定，不再依赖结束码。
+ * 所有缓冲区在构造时分配，长度由负载上限决定。
+ */
+class FrameAssembler {
+    static final byte PREAMBLE = 0b01010101;
+    static final int PREAMBLE_C = 2;
+    static final byte EPILOGUE = (byte) 0b11111111;
+    static final int EPILOGUE_C = 1;
+    static final int HEADER_C = 1;              // 使用FEC时负载长度字段的字节数(编码前)
+    static final int MAX_CODED_PAYLOAD = 255;   // 使用FEC时负载的最大字节数
+
+    private final FecCodec codec;
+    private final int maxPayload;
+    private final int maxPreambleErrors;
+    private final int headerBytes;      // 编码后的长度字段的字节数
+    private final byte[] header = new byte[HEADER_C];
+    private final byte[] bytes;
+    private final byte[] bits;
+    private final float[] soft;         // 每个bit为1的概率
+    private int bitCount;
+    private int preambleErrors;
+    private int payloadLength;
+    private int frameBytes = -1;        // 使用FEC时整帧的字节数，解出长度之前为-1
+    private boolean complete;
+
+    /**
+     * @param maxPayload        负载的最大字节数
+     * @param maxPreambleErrors 前导码中允许的错误比特数
+     */
+    FrameAssembler(int maxPayload, int maxPreambleErrors) {
+        this(maxPayload, maxPreambleErrors, FecCodec.NONE);
+    }
+
+    /**
+     * @param maxPayload        负载的最大字节数，使用FEC时不超过MAX_CODED_PAYLOAD
+     * @param maxPreambleErrors 前导码中允许的错误比特数
+     * @param codec             负载的纠错编码
+     */
+    FrameAssembler(int maxPayload, int maxPreambleErrors, FecCodec codec) {
+        this.codec = codec;
+        this.maxPreambleErrors = maxPreambleErrors;
+        if (codec == FecCodec.NONE) {
+            this.maxPayload = maxPayload;
+            this.headerBytes = 0;
+            this.bytes = new byte[maxPayload + PREAMBLE_C + EPILOGUE_C];
+        } else {
+            this.maxPayload = Math.min(maxPayload, MAX_CODED_PAYLOAD);
+            this.headerBytes = codec.encodedLength(HEADER_C);
+            this.bytes = new byte[PREAMBLE_C + bodyLength(codec, this.maxPayload) + EPILOGUE_C];
+        }
+        this.bits = new byte[bytes.length * 8];
+        this.soft = new float[bits.length];
+    }
+
+    /**
+     * 前导码与结束码之间的字节数
+     * @param dataLength 负载的字节数
+     */
+    static int bodyLength(FecCodec codec, int dataLength) {
+        if (codec == FecCodec.NONE) return dataLength;
+        return codec.encodedLength(HEADER_C) + codec.encodedLength(dataLength);
+    }
+
+    /**
+     * 前导码与结束码之间发送的字节：不使用FEC时为负载本身，否则为编码后的长度字段和负载
+     */
+    static byte[] body(FecCodec codec, byte[] data) {
+        if (codec == FecCodec.NONE) {
+            for (byte b : data) {
+                if (b == EPILOGUE) throw new IllegalArgumentException("Payload contains the epilogue byte 0xFF");
+            }
+            return data;
+        }
+        if (data.length > MAX_CODED_PAYLOAD) {
+            throw new IllegalArgumentException("Payload too long: " + data.length);
+        }
+        byte[] body = new byte[bodyLength(codec, data.length)];
+        codec.encode(new byte[]{(byte) data.length}, 0, HEADER_C, body, 0);
+        codec.encode(data, 0, data.length, body, codec.encodedLength(HEADER_C));
+        return body;
+    }
+
+    void reset() {
+        bitCount = 0;
+        preambleErrors = 0;
+        payloadLength = 0;
+        frameBytes = -1;
+        complete = false;
+    }
+
+    /**
+     * @return 已收到的比特数
+     */
+    int bitCount() {
+        return bitCount;
+    }
+
+    /**
+     * @return 是否已收到结束码
+     */
+    boolean complete() {
+        return complete;
+    }
+
+    /**
+     * 追加一个硬判决的比特
+     * @return false表示这不是一个有效的帧(前导码不匹配或超长)，调用方应当reset
+     */
+    boolean push(int bit) {
+        return push(bit, bit);
+    }
+
+    /**
+     * 追加一个比特
+     * @param soft 该比特为1的概率，供FEC软判决解码
+     * @return false表示这不是一个有效的帧(前导码不匹配、长度字段无效或超长)，调用方应当reset
+     */
+    boolean push(int bit, float soft) {
+        if (complete) return true;
+        if (bitCount == bits.length) return false;
+        this.soft[bitCount] = soft;
+        bits[bitCount++] = (byte) bit;
+        if (bitCount % 8 != 0) return true;
+
+        int i = bitCount / 8 - 1;
+        bytes[i] = byteAt(i);
+        if (i < PREAMBLE_C) {
+            preambleErrors += count_ones(bytes[i] ^ PREAMBLE);
+            return preambleErrors <= maxPreambleErrors;
+        }
+        if (codec == FecCodec.NONE) {
+            if (bytes[i] == EPILOGUE) complete = true;
+            return true;
+        }
+        if (i == PREAMBLE_C + headerBytes - 1) {
+            if (codec.decode(this.soft, PREAMBLE_C * 8, HEADER_C, header, 0) < 0) return false;
+            payloadLength = header[0] & 0xff;
+            if (payloadLength > maxPayload) return false;
+            frameBytes = PREAMBLE_C + bodyLength(codec, payloadLength) + EPILOGUE_C;
+        }
+        if (i == frameBytes - 1) complete = true;
+        return true;
+    }
+
+    /**
+     * 信号中断时结束当前帧：不足一字节的部分补1，最后一个字节视为结束码
+     * @return 是否足够组成一个帧
+     */
+    boolean finish() {
+        if (complete) return true;
+        if (codec != FecCodec.NONE) {
+            // 长度已知时缺少的部分按不确定(概率0.5)交给解码器，长度还未收到则无法组成帧
+            if (frameBytes < 0) return false;
+            while (!complete) push(1, 0.5f);
+            return true;
+        }
+        while (bitCount % 8 != 0 && bitCount < bits.length) {
+            push(1);
+        }
+        complete = bitCount / 8 >= PREAMBLE_C + EPILOGUE_C;
+        return complete;
+    }
+
+    /**
+     * 根据已收到的帧生成解码结果，误差与BFSKDemodulator.getData相同：
+     * 前导码与结束码中的错误比特比例；使用FEC时负载在这里解码，无法纠正时误差为1
+     * @param offset 帧起点的样本位置
+     */
+    BFSKDemodulator.DecodeResult result(long offset) {
+        int count = bitCount / 8;
+        int error_bit = checkErrors();
+        double error = error_bit / 8.0 / (PREAMBLE_C + EPILOGUE_C);
+        byte[] msg;
+        if (codec == FecCodec.NONE) {
+            msg = new byte[count - PREAMBLE_C - EPILOGUE_C];
+            System.arraycopy(bytes, PREAMBLE_C, msg, 0, msg.length);
+        } else {
+            msg = new byte[payloadLength];
+            // 负载无法纠正时按完全错误处理
+            if (codec.decode(soft, (PREAMBLE_C + headerBytes) * 8, payloadLength, msg, 0) < 0) error = 1;
+        }
+
+        BFSKDemodulator.DecodeResult rst = new BFSKDemodulator.DecodeResult(
+                msg,
+                error,
+                Arrays.copyOf(bits, bitCount),
+                offset
+        );
+        rst.llr = new float[bitCount];
+        for (int i = 0; i < bitCount; i++) {
+            rst.llr[i] = SymbolSlicer.llr(soft[i]);
+        }
+        return rst;
+    }
+
+    /**
+     * @return 已收到的帧中前导码与结束码的错误比特数
+     */
+    int checkErrors() {
+        int count = bitCount / 8;
+        int error_bit = preambleErrors;
+        for (int j = count - EPILOGUE_C; j < count; j++) {
+            error_bit += count_ones(bytes[j] ^ EPILOGUE);
+        }
+        return error_bit;
+    }
+
+    private byte byteAt(int i) {
+        int b = 0;
+        for (int j = 0; j < 8; j++) {
+            b |= (bits[i * 8 + j] << j);
+        }
+        return (byte) b;
+    }
+
+    // count the number of 1s in a byte
+    static int count_ones(int x) {
+        return Integer.bitCount(x & 0xff);
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.androidaudio.signal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * M进制FSK解调，与MFSKModulator配对
+ *
+ * 先用PreambleDetector找到帧起点，之后每个符号取一个居中的窗口做一次Spectrogram，
+ * 比较M个频率所在频点的幅值：前导码只比较两端的频率，负载取幅值最大的频率，按格雷码换算成符号值。
+ * 窗口长度取不超过符号长度的最大2的幂，加Hann窗降低相邻频率之间的泄漏，
+ * 频率间隔 2fd/(M-1) 最好不小于两个频点(2·fs/窗口长度)。
+ */
+public class MFSKDemodulator implements Demodulator {
+    private static final int MAX_PAYLOAD = 256;    // getData的负载上限
+
+    private final double fs = 48000;
+    private final int order;
+    private final int bitsPerSymbol;
+    private final int samplesPerSymbol;
+    private final PreambleDetector preambleDetector;
+    private final Spectrogram spectrogram;
+    private final int[] bins;       // 每个频率所在的频点
+    private final int[] values;     // 每个频率表示的符号值(格雷码)
+    private final FecCodec codec;
+    private final DemodMetrics metrics;
+
+    /**
+     * @param order        进制数M，2的幂，2 ~ 16
+     * @param fc           载波频率
+     * @param fd           最高/最低频率与载波的频差
+     * @param symbolPeriod 符号时间
+     */
+    public MFSKDemodulator(int order, double fc, double fd, double symbolPeriod) {
+        this(order, fc, fd, symbolPeriod, FecCodec.NONE);
+    }
+
+    /**
+     * @param codec 负载的纠错编码，需与调制端相同
+     */
+    public MFSKDemodulator(int order, double fc, double fd, double symbolPeriod, FecCodec codec) {
+        this(order, fc, fd, symbolPeriod, codec, DemodMetrics.NONE);
+    }
+
+    /**
+     * @param metrics 各阶段的耗时、帧统计和调试输出
+     */
+    public MFSKDemodulator(int order, double fc, double fd, double symbolPeriod, FecCodec codec,
+                           DemodMetrics metrics) {
+        if (order < 2 || order > 16 || (order & (order - 1)) != 0) {
+            throw new IllegalArgumentException("Unsupported FSK order " + order);
+        }
+        this.order = order;
+        this.bitsPerSymbol = Integer.numberOfTrailingZeros(order);
+        this.samplesPerSymbol = Math.toIntExact(Math.round(symbolPeriod * fs));
+        this.preambleDetector = new PreambleDetector(fs, fc - fd, fc + fd, samplesPerSymbol);
+        this.spectrogram = new Spectrogram(fs, Integer.highestOneBit(samplesPerSymbol),
+                samplesPerSymbol, Spectrogram.Window.HANN);
+        double[] tones = MFSKModulator.tones(fc, fd, order);
+        this.bins = new int[order];
+        this.values = new int[order];
+        for (int v = 0; v < order; v++) {
+            bins[v] = spectrogram.bin(tones[v]);
+            values[v] = MFSKModulator.valueOf(v);
+        }
+        this.codec = codec;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 解调信号中的第一个帧
+     */
+    @Override
+    public BFSKDemodulator.DecodeResult getData(Samples signal) {
+        List<BFSKDemodulator.DecodeResult> frames = getFrames(signal, MAX_PAYLOAD);
+        if (frames.isEmpty()) {
+            return new BFSKDemodulator.DecodeResult(new byte[]{}, 1, "Preamble not found");
+        }
+        return frames.get(0);
+    }
+
+    /**
+     * 依次查找前导码并解调，从帧尾继续查找下一帧，整段信号只向前扫描一遍
+     */
+    @Override
+    public List<BFSKDemodulator.DecodeResult> getFrames(Samples signal, int maxPayload) {
+        List<BFSKDemodulator.DecodeResult> frames = new ArrayList<>();
+        FrameAssembler assembler = new FrameAssembler(maxPayload, 4, codec);
+        StageClock clock = StageClock.start(metrics);
+        int from = 0;
+        int start;
+        while ((start = preambleDetector.find(signal, from)) >= 0) {
+            clock.lap(DemodMetrics.Stage.PREAMBLE);
+            int end = decode_frame(signal, start, assembler);
+            clock.lap(DemodMetrics.Stage.SLICE);
+            if (assembler.complete()) {
+                BFSKDemodulator.DecodeResult rst = assembler.result(start);
+                clock.lap(DemodMetrics.Stage.FRAME);
+                if (metrics.enabled()) metrics.frame(assembler.checkErrors(), frame_snr(signal, start, end));
+                if (metrics.debugEnabled()) metrics.debug("MFSK", "Frame at " + start + ": " + new String(rst.msg));
+                frames.add(rst);
+                from = end;
+            } else {
+                from = start + samplesPerSymbol;
+            }
+        }
+        clock.lap(DemodMetrics.Stage.PREAMBLE);
+        return frames;
+    }
+
+    // 逐个符号判决直到结束码、信号能量低于前导码的1%或者信号结束，返回帧尾的样本位置
+    private int decode_frame(Samples signal, int start, FrameAssembler assembler) {
+        assembler.reset();
+        // 第t帧频谱的窗口位于第t个符号的中间
+        int size = spectrogram.size();
+        Samples symbols = signal.skip(start + (samplesPerSymbol - size) / 2);
+        int count = spectrogram.frames(symbols.length());
+        int preamble_bits = FrameAssembler.PREAMBLE_C * Byte.SIZE;
+        int bins_per_frame = spectrogram.bins();
+        float[] spectrum = new float[bins_per_frame];
+        SymbolSlicer slicer = new SymbolSlicer();
+        double preamble_energy = 0;
+
+        for (int symbol = 0; symbol < count; symbol++) {
+            spectrogram.compute(symbols, symbol, symbol + 1, spectrum, 0);
+            double e = 0;
+            int best = 0;
+            for (int v = 0; v < order; v++) {
+                double a = spectrum[bins[v]];
+                e += a * a;
+                if (a > spectrum[bins[best]]) best = v;
+            }
+
+            if (symbol < preamble_bits) {
+                preamble_energy += e / preamble_bits;
+                int bit = spectrum[bins[order - 1]] > spectrum[bins[0]] ? 1 : 0;
+                if (!assembler.push(bit)) return start + (symbol + 1) * samplesPerSymbol;
+                continue;
+            }
+            if (e < preamble_energy * 0.01) {
+                // 信号中断，按已收到的部分结束
+                assembler.finish();
+                return start + symbol * samplesPerSymbol;
+            }
+            int value = values[best];
+            for (int j = 0; j < bitsPerSymbol; j++) {
+                // 软判决：符号值第j位为0/1的各频率中最大的幅值相比较
+                double m0 = 0, m1 = 0;
+                for (int v = 0; v < order; v++) {
+                    if ((values[v] >> j & 1) == 0) m0 = Math.max(m0, spectrum[bins[v]]);
+                    else m1 = Math.max(m1, spectrum[bins[v]]);
+                }
+                slicer.reset();
+                slicer.add(m0, m1);
+                if (!assembler.push((value >> j) & 1, slicer.probability())) return start + (symbol + 1) * samplesPerSymbol;
+            }
+            if (assembler.complete()) return start + (symbol + 1) * samplesPerSymbol;
+        }
+        assembler.finish();
+        return start + count * samplesPerSymbol;
+    }
+
+    // 帧的信噪比(dB)，只在统计时计算：每个符号中幅值最大的频率之外，其余order-1个频点上只有噪声，
+    // 取它们的平均能量作为单个频点的噪声底；符号能量(order个频点之和)减去噪声后与之相比，与BFSKDemodulator的定义相同
+    private double frame_snr(Samples signal, int start, int end) {
+        Samples symbols = signal.skip(start + (samplesPerSymbol - spectrogram.size()) / 2);
+        int count = Math.min(spectrogram.frames(symbols.length()), (end - start) / samplesPerSymbol);
+        float[] spectrum = new float[spectrogram.bins()];
+        double energy = 0, noise = 0;
+        for (int symbol = 0; symbol < count; symbol++) {
+            spectrogram.compute(symbols, symbol, symbol + 1, spectrum, 0);
+            double e = 0, peak = 0;
+            for (int v = 0; v < order; v++) {
+                double p = spectrum[bins[v]] * spectrum[bins[v]];
+                e += p;
+                peak = Math.max(peak, p);
+            }
+            energy += e;
+            noise += (e - peak) / (order - 1);
+        }
+        if (noise <= 0) return Double.NaN;
+        return 10 * Math.log10(Math.max(energy - order * noise, 0) / noise);
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.androidaudio.signal;
+
+import androidx.annotation.NonNull;
+
+/**
+ * M进制FSK调制(M = 2, 4, 8, 16)，每个符号携带log2(M)个bit
+ *
+ * M个频率均匀分布在 [fc-fd, fc+fd] 上，间隔为 2fd/(M-1)，M=2时与BFSK相同。
+ * 帧格式与BFSK一致(前导码 0x55 × 2，负载，结束码 0xFF)：
+ * 前导码仍按每符号1bit用两端的频率 fc-fd / fc+fd 发送，接收端可以直接复用PreambleDetector同步；
+ * 负载和结束码按低位先发的顺序每log2(M)个bit组成一个符号，最后一个符号不足的位补1；
+ * 第t个频率表示符号值 t^(t>>1)(格雷码)，相邻频率的符号值只差1个bit，误判成相邻频率时只错1个bit。
+ */
+public class MFSKModulator implements Modulator {
+    private final double sampleRate;
+    private final int order;
+    private final int bitsPerSymbol;
+    private final double frequencyDeviation;
+    private final double symbolPeriod;
+    private final FecCodec codec;
+
+    /**
+     * @param sampleRate         采样率
+     * @param order              进制数M，2的幂，2 ~ 16
+     * @param frequencyDeviation 最高/最低频率与载波的频差
+     * @param symbolPeriod       符号时间
+     */
+    public MFSKModulator(double sampleRate, int order, double frequencyDeviation, double symbolPeriod) {
+        this(sampleRate, order, frequencyDeviation, symbolPeriod, FecCodec.NONE);
+    }
+
+    /**
+     * @param codec 负载的纠错编码，帧格式见FrameAssembler
+     */
+    public MFSKModulator(double sampleRate, int order, double frequencyDeviation, double symbolPeriod,
+                         FecCodec codec) {
+        if (order < 2 || order > 16 || (order & (order - 1)) != 0) {
+            throw new IllegalArgumentException("Unsupported FSK order " + order);
+        }
+        this.sampleRate = sampleRate;
+        this.order = order;
+        this.bitsPerSymbol = Integer.numberOfTrailingZeros(order);
+        this.frequencyDeviation = frequencyDeviation;
+        this.symbolPeriod = symbolPeriod;
+        this.codec = codec;
+    }
+
+    /**
+     * 由调制方式的设置值得到进制数："4FSK"、"8FSK"、"16FSK"，其余(包括"FSK")按BFSK处理
+     */
+    public static int order(String modulation) {
+        if (modulation != null && modulation.endsWith("FSK") && modulation.length() > 3) {
+            try {
+                return Integer.parseInt(modulation.substring(0, modulation.length() - 3));
+            } catch (NumberFormatException e) {
+                return 2;
+            }
+        }
+        return 2;
+    }
+
+    /**
+     * @return 第 0 ~ M-1 个符号值对应的频率
+     */
+    public static double[] tones(double carrierFrequency, double frequencyDeviation, int order) {
+        double[] tones = new double[order];
+        for (int v = 0; v < order; v++) {
+            tones[v] = carrierFrequency - frequencyDeviation + 2 * frequencyDeviation * v / (order - 1);
+        }
+        return tones;
+    }
+
+    /**
+     * 前导码之后的符号数
+     * @param dataLength 负载字节数
+     */
+    static int dataSymbols(int dataLength, int bitsPerSymbol) {
+        int bits = (dataLength + FrameAssembler.EPILOGUE_C) * Byte.SIZE;
+        return (bits + bitsPerSymbol - 1) / bitsPerSymbol;
+    }
+
+    @Override
+    public double[] getRealSignal(double carrierFrequency, @NonNull byte[] dataToModulate) {
+        double[] signal = new double[getSignalLength(dataToModulate.length)];
+        getRealSignal(carrierFrequency, dataToModulate, signal, 0);
+        return signal;
+    }
+
+    /**
+     * 调制后信号的样本数
+     * @param dataLength 待调制数据的字节数
+     */
+    public int getSignalLength(int dataLength) {
+        return symbolCount(FrameAssembler.bodyLength(codec, dataLength)) * samplesPerSymbol();
+    }
+
+    /**
+     * 将调制的实数信号写入调用方提供的缓冲区，各符号之间相位连续
+     * @return 写入的样本数
+     */
+    public int getRealSignal(double carrierFrequency, @NonNull byte[] dataToModulate, double[] out, int off) {
+        byte[] body = FrameAssembler.body(codec, dataToModulate);
+        double[] tones = tones(carrierFrequency, frequencyDeviation, order);
+        Oscillator oscillator = new Oscillator(sampleRate);
+        int samplesPerSymbol = samplesPerSymbol();
+        int symbols = symbolCount(body.length);
+        for (int i = 0; i < symbols; i++) {
+            oscillator.setFrequency(tones[symbolAt(body, i)]);
+            oscillator.render(out, off + i * samplesPerSymbol, samplesPerSymbol);
+        }
+        return symbols * samplesPerSymbol;
+    }
+
+    @Override
+    public SampleStream openStream(double carrierFrequency, @NonNull byte[] dataToModulate) {
+        final byte[] body = FrameAssembler.body(codec, dataToModulate);
+        final double[] tones = tones(carrierFrequency, frequencyDeviation, order);
+        final int samplesPerSymbol = samplesPerSymbol();
+        final int symbols = symbolCount(body.length);
+        final Oscillator oscillator = new Oscillator(sampleRate);
+        return new SampleStream() {
+            private int symbol = 0;     // 当前符号的序号
+            private int inSymbol = 0;   // 当前符号内已生成的样本数
+
+            @Override
+            public int read(short[] dst, int off, int len) {
+                if (symbol == symbols) return -1;
+                int n = 0;
+                while (n < len && symbol < symbols) {
+                    if (inSymbol == 0) {
+                        oscillator.setFrequency(tones[symbolAt(body, symbol)]);
+                    }
+                    int k = Math.min(len - n, samplesPerSymbol - inSymbol);
+                    oscillator.render(dst, off + n, k, Short.MAX_VALUE);
+                    n += k;
+                    inSymbol += k;
+                    if (inSymbol == samplesPerSymbol) {
+                        inSymbol = 0;
+                        symbol++;
+                    }
+                }
+                return n;
+            }
+        };
+    }
+
+    private int samplesPerSymbol() {
+        return Math.toIntExact(Math.round(symbolPeriod * sampleRate));
+    }
+
+    // bodyLength为前导码与结束码之间的字节数
+    private int symbolCount(int bodyLength) {
+        return FrameAssembler.PREAMBLE_C * Byte.SIZE + dataSymbols(bodyLength, bitsPerSymbol);
+    }
+
+    // 第i个符号的频率序号
+    private int symbolAt(byte[] data, int i) {
+        int preambleBits = FrameAssembler.PREAMBLE_C * Byte.SIZE;
+        if (i < preambleBits) {
+            int bit = (FrameAssembler.PREAMBLE >> (i % Byte.SIZE)) & 1;
+            return bit == 1 ? order - 1 : 0;
+        }
+        int v = 0;
+        int first = (i - preambleBits) * bitsPerSymbol;
+        for (int j = 0; j < bitsPerSymbol; j++) {
+            v |= bitAt(data, first + j) << j;
+        }
+        return toneOf(v);
+    }
+
+    /**
+     * @return 第t个频率表示的符号值(t的格雷码)
+     */
+    static int valueOf(int t) {
+        return t ^ (t >> 1);
+    }
+
+    /**
+     * @return 表示符号值v的频率序号，valueOf的逆
+     */
+    static int toneOf(int v) {
+        int t = v;
+        for (int shift = 1; shift < Integer.SIZE; shift <<= 1) {
+            t ^= t >> shift;
+        }
+        return t;
+    }
+
+    // 负载和结束码中的第k个bit，超出部分为1
+    private static int bitAt(byte[] data, int k) {
+        int i = k / Byte.SIZE;
+        if (i >= data.length) return 1;
+        return (data[i] >> (k % Byte.SIZE)) & 1;
+    }
+}
@@ -2,17 +2,49 @@ package com.example.androidaudio.signal;
 
 import org.apache.commons.math3.complex.Complex;
 
+/**
+ * 调制器
+ *
+ * BFSK/MFSK不使用FEC时以0xFF字节作为帧的结束码，负载中不能有0xFF(UTF-8文本不会出现)，
+ * 否则调制时抛出IllegalArgumentException；发送任意二进制数据需要使用FecCodec(按长度字段分帧)或OFDM。
+ */
 public interface Modulator {
     /**
      * 获取调制的实信号（已上载波）
      * @param carrierFrequency 载波频率
-     * @param dataToModulate 待调制的数据
+     * @param dataToModulate 待调制的数据，不使用FEC的BFSK/MFSK中不能有0xFF字节
      * @return 调制的实信号
      */
     public default double[] getRealSignal(double carrierFrequency, byte[] dataToModulate){
         return new double[0];
     }
 
+    /**
+     * 以流的方式获取调制的实信号(16bit PCM)，每次按需生成一块
+     * 默认实现先生成完整的信号再分块输出，子类可以覆盖以做到内存占用与数据长度无关
+     * @param carrierFrequency 载波频率
+     * @param dataToModulate 待调制的数据
+     * @return PCM样本流
+     */
+    public default SampleStream openStream(double carrierFrequency, byte[] dataToModulate) {
+        final double[] signal = getRealSignal(carrierFrequency, dataToModulate);
+        return new SampleStream() {
+            private int pos = 0;
+
+            @Override
+            public int read(short[] dst, int off, int len) {
+                if (pos == signal.length) return -1;
+                int n = Math.min(len, signal.length - pos);
+                for (int i = 0; i < n; i++) {
+                    double v = Math.max(-1, Math.min(1, signal[pos + i]));
+                    dst[off + i] = (short) Math.round(v * Short.MAX_VALUE);
+                }
+                pos += n;
+                return n;
+            }
+        };
+    }
+
     /**
      * 获取IQ基带信号
      * @param dataToModulate
@@ -22,4 +54,14 @@ public interface Modulator {
         return new Complex[0];
     }
 
+    /**
+     * 按块读取的PCM样本流
+     */
+    public interface SampleStream {
+        /**
+         * 生成最多len个样本写入 dst[off, off+len)
+         * @return 实际写入的样本数，信号已结束时返回-1
+         */
+        int read(short[] dst, int off, int len);
+    }
 }
@@ -0,0 +1,112 @@
+package com.example.androidaudio.signal;
+
+/**
+ * 各频点噪声底的流式估计(最小值统计)
+ *
+ * 每一步输入各频点的能量，先做指数平滑，再取最近一段时间(window步)内平滑能量的最小值，
+ * 乘以偏差补偿系数作为噪声底。短暂的强干扰(敲击、说话)只会抬高平滑能量，不影响最小值；
+ * 某个频点上持续存在的背景音则会计入该频点自己的噪声底。
+ * 开始的WARMUP步平滑能量取算术平均，之后才计入最小值，单独一步偏小的能量不会把噪声底拉低。
+ * 最小值按 SUBWINDOWS 个子窗口分段保存，每一步只做常数次比较，不需要保存窗口内的全部能量。
+ * 调用方把能量除以噪声底得到归一化能量(信噪比)做门限检测，门限与录音电平和背景音无关。
+ */
+public class NoiseTracker {
+    private static final double SMOOTHING = 0.9;    // 平滑系数，约10步
+    private static final int SUBWINDOWS = 8;
+    private static final double BIAS = 2.7;         // 平滑能量的最小值相对均值的偏差补偿(高斯噪声实测)
+    private static final double MIN_FLOOR = 1e-3;   // 噪声底下限，静音时避免除以0
+    private static final int WARMUP = 10;           // 平滑能量稳定所需的步数
+
+    private final int tones;
+    private final int length;           // 子窗口的步数
+    private final double[] smoothed;
+    private final double[] current;     // 当前子窗口内的最小值
+    private final double[][] minima;    // 已完成的子窗口各自的最小值，循环存放
+    private int count;      // 当前子窗口已输入的步数
+    private int filled;     // 已完成的子窗口数
+    private int updates;    // 已输入的步数
+
+    /**
+     * @param tones  频点个数
+     * @param window 取最小值的窗口步数，应长于噪声的起伏和信号的持续时间
+     */
+    public NoiseTracker(int tones, int window) {
+        this.tones = tones;
+        this.length = Math.max(1, window / SUBWINDOWS);
+        this.smoothed = new double[tones];
+        this.current = new double[tones];
+        this.minima = new double[tones][SUBWINDOWS];
+        reset();
+    }
+
+    public void reset() {
+        count = 0;
+        filled = 0;
+        updates = 0;
+        for (int k = 0; k < tones; k++) {
+            smoothed[k] = 0;
+            current[k] = Double.MAX_VALUE;
+        }
+    }
+
+    /**
+     * 输入一步各频点的能量(幅值的平方)
+     */
+    public void update(double[] energy) {
+        updates++;
+        double alpha = Math.max(1 - SMOOTHING, 1.0 / updates);
+        for (int k = 0; k < tones; k++) {
+            smoothed[k] += alpha * (energy[k] - smoothed[k]);
+        }
+        if (updates < WARMUP) return;
+        for (int k = 0; k < tones; k++) {
+            current[k] = Math.min(current[k], smoothed[k]);
+        }
+        if (++count == length) {
+            int slot = filled % SUBWINDOWS;
+            for (int k = 0; k < tones; k++) {
+                minima[k][slot] = current[k];
+                current[k] = Double.MAX_VALUE;
+            }
+            count = 0;
+            filled++;
+        }
+    }
+
+    /**
+     * @return 是否已经有噪声底的估计(输入了至少WARMUP步)，之前的噪声底只是下限值
+     */
+    public boolean ready() {
+        return count > 0 || filled > 0;
+    }
+
+    /**
+     * @return 第k个频点的噪声底(能量)，还没有输入时为下限值
+     */
+    public double floor(int k) {
+        double min = current[k];
+        for (int i = 0, n = Math.min(filled, SUBWINDOWS); i < n; i++) {
+            min = Math.min(min, minima[k][i]);
+        }
+        return min == Double.MAX_VALUE ? MIN_FLOOR : Math.max(MIN_FLOOR, min * BIAS);
+    }
+
+    /**
+     * @return 第k个频点的归一化能量 energy/floor(k)
+     */
+    public double normalize(int k, double energy) {
+        return energy / floor(k);
+    }
+
+    /**
+     * 是否有信号：任一频点的归一化能量超过gate，还没有噪声底的估计时为false
+     * 调用方只在帧外没有信号时update，噪声底不会跟着信号升高
+     */
+    public boolean active(double[] energy, double gate) {
+        if (!ready()) return false;
+        for (int k = 0; k < tones; k++) {
+            if (normalize(k, energy[k]) > gate) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.androidaudio.signal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * OFDM解调，与OFDMModulator配对
+ *
+ * 用训练符号的解析信号做匹配滤波找到帧起点，之后每个符号乘以 e^(-j2πfc·t) 下变频再做FFT。
+ * FFT窗口从循环前缀结束前 CP/4 处开始：多径时延不超过 3CP/4(4ms)、同步偏晚不超过 CP/4 时
+ * 都不会引入符号间干扰，窗口的提前只会给各子载波带来固定的线性相位，由均衡消除。
+ * 均衡：训练符号给出每个子载波的信道 H[k]；每个数据符号再用导频求出相对训练符号的变化 G(k)
+ * (公共相位、采样时钟偏差造成的相位斜率等，对k按加权最小二乘拟合为一次函数)，
+ * 数据子载波除以 H[k]·G(k) 后按QPSK判决。
+ * CRC-8校验通过时error为0，否则为1。
+ */
+public class OFDMDemodulator implements Demodulator {
+    private static final int MAX_PAYLOAD = 256;    // getData的负载上限
+
+    private final double fs = 48000;
+    private final double fc;
+    private final OFDMLayout layout;
+    private final FFT fft = new FFT(OFDMLayout.FFT_SIZE);
+    private final PreambleDetector preambleDetector;
+
+    /**
+     * @param fc 载波频率
+     * @param fd 占用带宽的一半，子载波位于 [fc-fd, fc+fd]
+     */
+    public OFDMDemodulator(double fc, double fd) {
+        this.fc = fc;
+        this.layout = new OFDMLayout(fs, fd);
+        double[][] training = new double[2][OFDMLayout.SYMBOL];
+        layout.synthesize(fft, layout.trainRe, layout.trainIm, training[0], training[1], 0);
+        // 训练符号没有周期性，直接取最高峰
+        this.preambleDetector = new PreambleDetector(
+                OFDMLayout.passband(training, fc, fs), OFDMLayout.CP, 1, PreambleDetector.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * 解调信号中的第一个帧
+     */
+    @Override
+    public BFSKDemodulator.DecodeResult getData(Samples signal) {
+        List<BFSKDemodulator.DecodeResult> frames = getFrames(signal, MAX_PAYLOAD);
+        if (frames.isEmpty()) {
+            return new BFSKDemodulator.DecodeResult(new byte[]{}, 1, "Preamble not found");
+        }
+        return frames.get(0);
+    }
+
+    /**
+     * 依次查找训练符号并解调，从帧尾继续查找下一帧
+     */
+    @Override
+    public List<BFSKDemodulator.DecodeResult> getFrames(Samples signal, int maxPayload) {
+        List<BFSKDemodulator.DecodeResult> frames = new ArrayList<>();
+        int from = 0;
+        int start;
+        while ((start = preambleDetector.find(signal, from)) >= 0) {
+            BFSKDemodulator.DecodeResult rst = decode_frame(signal, start, maxPayload);
+            if (rst != null) {
+                frames.add(rst);
+                int symbols = 1 + layout.dataSymbols(rst.msg.length);
+                from = start + symbols * OFDMLayout.SYMBOL;
+            } else {
+                from = start + OFDMLayout.CP;
+            }
+        }
+        return frames;
+    }
+
+    // 解调从start开始的一帧，长度字段无效或信号不完整时返回null
+    private BFSKDemodulator.DecodeResult decode_frame(Samples signal, int start, int maxPayload) {
+        int carriers = layout.carriers();
+        double[] yr = new double[carriers];
+        double[] yi = new double[carriers];
+        if (!spectrum_at(signal, start, 0, yr, yi)) return null;
+
+        // 训练符号得到的信道 H = Y / X
+        double[] hr = new double[carriers];
+        double[] hi = new double[carriers];
+        for (int i = 0; i < carriers; i++) {
+            double xr = layout.trainRe[i], xi = layout.trainIm[i];
+            double n = xr * xr + xi * xi;
+            hr[i] = (yr[i] * xr + yi[i] * xi) / n;
+            hi[i] = (yi[i] * xr - yr[i] * xi) / n;
+        }
+
+        // 先解出第一个数据符号里的长度字段
+        int bitsPerSymbol = layout.bitsPerSymbol();
+        byte[] bits = new byte[bitsPerSymbol];
+        if (!spectrum_at(signal, start, 1, yr, yi)) return null;
+        equalize_and_slice(yr, yi, hr, hi, bits, 0);
+        int length = 0;
+        for (int k = 0; k < OFDMLayout.HEADER_BYTES * Byte.SIZE; k++) {
+            length |= bits[k] << k;
+        }
+        if (length > maxPayload) return null;
+
+        int symbols = layout.dataSymbols(length);
+        bits = Arrays.copyOf(bits, symbols * bitsPerSymbol);
+        for (int s = 2; s <= symbols; s++) {
+            if (!spectrum_at(signal, start, s, yr, yi)) return null;
+            equalize_and_slice(yr, yi, hr, hi, bits, (s - 1) * bitsPerSymbol);
+        }
+
+        byte[] frame = new byte[OFDMLayout.HEADER_BYTES + length + OFDMLayout.CRC_BYTES];
+        for (int k = 0; k < frame.length * Byte.SIZE; k++) {
+            frame[k / Byte.SIZE] |= bits[k] << (k % Byte.SIZE);
+        }
+        byte[] msg = new byte[length];
+        System.arraycopy(frame, OFDMLayout.HEADER_BYTES, msg, 0, length);
+        boolean ok = OFDMLayout.crc8(frame, 0, frame.length - 1) == (frame[frame.length - 1] & 0xff);
+
+        return new BFSKDemodulator.DecodeResult(msg, ok ? 0 : 1, Arrays.copyOf(bits, frame.length * Byte.SIZE), start);
+    }
+
+    // 第symbol个OFDM符号下变频后各子载波的值，信号不够长时返回false
+    private boolean spectrum_at(Samples signal, int start, int symbol, double[] yr, double[] yi) {
+        int begin = start + symbol * OFDMLayout.SYMBOL + OFDMLayout.CP - OFDMLayout.CP / 4;
+        if (begin + OFDMLayout.FFT_SIZE > signal.length()) return false;
+        double[] re = new double[OFDMLayout.FFT_SIZE];
+        double[] im = new double[OFDMLayout.FFT_SIZE];
+        signal.get(begin, re, 0, re.length);
+        double w = 2 * Math.PI * fc / fs;
+        for (int n = 0; n < re.length; n++) {
+            // 载波相位以帧起点为0，与调制端一致
+            double t = w * (begin - start + n);
+            im[n] = -re[n] * Math.sin(t);
+            re[n] = re[n] * Math.cos(t);
+        }
+        fft.forward(re, im);
+        for (int i = 0; i < yr.length; i++) {
+            yr[i] = re[layout.fftIndex(i)];
+            yi[i] = im[layout.fftIndex(i)];
+        }
+        return true;
+    }
+
+    // 均衡后按QPSK判决，数据子载波的bit依次写入 bits[off...]
+    private void equalize_and_slice(double[] yr, double[] yi, double[] hr, double[] hi, byte[] bits, int off) {
+        int carriers = yr.length;
+        // 导频处相对训练符号的变化 G = Y / (H·p)，以 |H|² 为权重拟合 G(k) = α + β·k，
+        // 处于信道零点附近的导频噪声大，权重也小
+        double sw = 0, sk = 0, skk = 0;
+        double sgr = 0, sgi = 0, skgr = 0, skgi = 0;
+        for (int i = 0; i < carriers; i++) {
+            if (!layout.pilot[i]) continue;
+            double p = layout.pilotValue(i);
+            double w = hr[i] * hr[i] + hi[i] * hi[i];
+            // w·G = conj(H)·Y / p
+            double wgr = (yr[i] * hr[i] + yi[i] * hi[i]) / p;
+            double wgi = (yi[i] * hr[i] - yr[i] * hi[i]) / p;
+            sw += w;
+            sk += w * i;
+            skk += w * i * i;
+            sgr += wgr;
+            sgi += wgi;
+            skgr += wgr * i;
+            skgi += wgi * i;
+        }
+        double det = sw * skk - sk * sk;
+        double br = det == 0 ? 0 : (sw * skgr - sk * sgr) / det;
+        double bi = det == 0 ? 0 : (sw * skgi - sk * sgi) / det;
+        double ar = (sgr - br * sk) / sw;
+        double ai = (sgi - bi * sk) / sw;
+
+        for (int i : layout.data) {
+            double gr = ar + br * i, gi = ai + bi * i;
+            // 信道 H·G
+            double cr = hr[i] * gr - hi[i] * gi;
+            double ci = hr[i] * gi + hi[i] * gr;
+            // Z = Y / (H·G)，只需要符号，乘以共轭即可
+            double zr = yr[i] * cr + yi[i] * ci;
+            double zi = yi[i] * cr - yr[i] * ci;
+            if (off < bits.length) bits[off++] = (byte) (zr < 0 ? 1 : 0);
+            if (off < bits.length) bits[off++] = (byte) (zi < 0 ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.androidaudio.signal;
+
+import java.util.Random;
+
+/**
+ * OFDM调制和解调共用的帧结构
+ *
+ * 每个OFDM符号为 FFT_SIZE 点IFFT加 CP 个样本的循环前缀，子载波间隔 fs/FFT_SIZE，
+ * 占用载波两侧 [fc-fd, fc+fd] 内的全部子载波。每隔 PILOT_SPACING 个子载波(以及最后一个)为导频，
+ * 导频为 ±1 交替，其余为数据子载波，每个承载一个QPSK符号(2 bit)。
+ *
+ * 一帧依次为：
+ * <pre>
+ *   训练符号  所有子载波为已知的伪随机QPSK，用于同步和信道估计
+ *   数据符号  2字节负载长度(小端) + 负载 + 1字节CRC-8，低位先发，最后一个符号不足的位补1
+ * </pre>
+ */
+final class OFDMLayout {
+    static final int FFT_SIZE = 1024;
+    static final int CP = 256;
+    static final int SYMBOL = FFT_SIZE + CP;
+    static final int PILOT_SPACING = 4;
+    static final int HEADER_BYTES = 2;
+    static final int CRC_BYTES = 1;
+
+    private static final long TRAINING_SEED = 0x5eed;
+
+    final int[] bins;           // 各子载波相对载波的频点序号，可为负
+    final boolean[] pilot;      // 是否为导频
+    final int[] data;           // 数据子载波在bins中的序号
+    final double[] trainRe, trainIm;    // 训练符号各子载波的值
+
+    /**
+     * @param sampleRate         采样率
+     * @param frequencyDeviation 占用带宽的一半，子载波位于 [fc-fd, fc+fd]
+     */
+    OFDMLayout(double sampleRate, double frequencyDeviation) {
+        int half = (int) Math.floor(frequencyDeviation * FFT_SIZE / sampleRate);
+        if (half < PILOT_SPACING) {
+            throw new IllegalArgumentException("Bandwidth too narrow for OFDM: " + frequencyDeviation);
+        }
+        int count = 2 * half + 1;
+        bins = new int[count];
+        pilot = new boolean[count];
+        int dataCount = 0;
+        for (int i = 0; i < count; i++) {
+            bins[i] = i - half;
+            pilot[i] = i % PILOT_SPACING == 0 || i == count - 1;
+            if (!pilot[i]) dataCount++;
+        }
+        data = new int[dataCount];
+        for (int i = 0, j = 0; i < count; i++) {
+            if (!pilot[i]) data[j++] = i;
+        }
+
+        Random random = new Random(TRAINING_SEED);
+        trainRe = new double[count];
+        trainIm = new double[count];
+        for (int i = 0; i < count; i++) {
+            trainRe[i] = random.nextBoolean() ? Math.sqrt(0.5) : -Math.sqrt(0.5);
+            trainIm[i] = random.nextBoolean() ? Math.sqrt(0.5) : -Math.sqrt(0.5);
+        }
+    }
+
+    int carriers() {
+        return bins.length;
+    }
+
+    /**
+     * @return 每个数据符号承载的bit数
+     */
+    int bitsPerSymbol() {
+        return 2 * data.length;
+    }
+
+    /**
+     * @return 负载为payloadLength字节时数据符号的个数
+     */
+    int dataSymbols(int payloadLength) {
+        int bits = (HEADER_BYTES + payloadLength + CRC_BYTES) * Byte.SIZE;
+        return (bits + bitsPerSymbol() - 1) / bitsPerSymbol();
+    }
+
+    /**
+     * @return 第i个导频的值
+     */
+    double pilotValue(int i) {
+        return (i / PILOT_SPACING) % 2 == 0 ? 1 : -1;
+    }
+
+    /**
+     * @return 频点序号在FFT_SIZE点FFT中的位置
+     */
+    int fftIndex(int i) {
+        return bins[i] < 0 ? bins[i] + FFT_SIZE : bins[i];
+    }
+
+    /**
+     * 由各子载波的值生成一个带循环前缀的基带符号，写入 out[off, off+SYMBOL)
+     * @param re,im 各子载波的值，长度为carriers()
+     */
+    void synthesize(FFT fft, double[] re, double[] im, double[] outRe, double[] outIm, int off) {
+        double[] xr = new double[FFT_SIZE];
+        double[] xi = new double[FFT_SIZE];
+        for (int i = 0; i < bins.length; i++) {
+            xr[fftIndex(i)] = re[i];
+            xi[fftIndex(i)] = im[i];
+        }
+        fft.inverse(xr, xi);
+        for (int n = 0; n < SYMBOL; n++) {
+            int k = (n + FFT_SIZE - CP) % FFT_SIZE;
+            outRe[off + n] = xr[k];
+            outIm[off + n] = xi[k];
+        }
+    }
+
+    /**
+     * 把基带信号搬移到载波上，返回解析信号 {实部, 虚部}，实部即发送的实信号
+     */
+    static double[][] passband(double[][] baseband, double carrierFrequency, double sampleRate) {
+        int n = baseband[0].length;
+        double[] re = new double[n];
+        double[] im = new double[n];
+        double w = 2 * Math.PI * carrierFrequency / sampleRate;
+        for (int i = 0; i < n; i++) {
+            double c = Math.cos(w * i), s = Math.sin(w * i);
+            re[i] = baseband[0][i] * c - baseband[1][i] * s;
+            im[i] = baseband[0][i] * s + baseband[1][i] * c;
+        }
+        return new double[][]{re, im};
+    }
+
+    // CRC-8，多项式 x^8 + x^2 + x + 1
+    static int crc8(byte[] data, int off, int len) {
+        int crc = 0;
+        for (int i = off; i < off + len; i++) {
+            crc ^= data[i] & 0xff;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xff : (crc << 1) & 0xff;
+            }
+        }
+        return crc;
+    }
+}
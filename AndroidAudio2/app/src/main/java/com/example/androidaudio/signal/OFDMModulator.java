@@ -0,0 +1,214 @@
+package com.example.androidaudio.signal;
+
+import androidx.annotation.NonNull;
+
+import org.apache.commons.math3.complex.Complex;
+
+/**
+ * OFDM调制，帧结构见OFDMLayout
+ *
+ * 先用IFFT生成复基带信号(getBaseBand)，再乘以 e^(j2πfc·t) 取实部得到发送的实信号。
+ * 默认参数(fs = 48000，fd = 1000)下有43个子载波，其中31个承载数据，
+ * 每个符号 1280 个样本(26.7ms)，原始速率约 2.3 kbit/s。
+ * 基带信号按峰值归一化到1，实信号不会超出 [-1, 1]。
+ * 信号逐个符号生成，getRealSignal(out, off)和openStream不需要整帧大小的中间数组。
+ */
+public class OFDMModulator implements Modulator {
+    private final double sampleRate;
+    private final OFDMLayout layout;
+    private final FFT fft = new FFT(OFDMLayout.FFT_SIZE);
+
+    /**
+     * @param sampleRate         采样率
+     * @param frequencyDeviation 占用带宽的一半，子载波位于 [fc-fd, fc+fd]
+     */
+    public OFDMModulator(double sampleRate, double frequencyDeviation) {
+        this.sampleRate = sampleRate;
+        this.layout = new OFDMLayout(sampleRate, frequencyDeviation);
+    }
+
+    @Override
+    public double[] getRealSignal(double carrierFrequency, @NonNull byte[] dataToModulate) {
+        double[] signal = new double[getSignalLength(dataToModulate.length)];
+        getRealSignal(carrierFrequency, dataToModulate, signal, 0);
+        return signal;
+    }
+
+    /**
+     * 将调制的实数信号写入调用方提供的缓冲区，逐个符号生成，不需要完整信号大小的中间数组
+     * @return 写入的样本数
+     */
+    public int getRealSignal(double carrierFrequency, @NonNull byte[] dataToModulate, double[] out, int off) {
+        Frame frame = new Frame(dataToModulate);
+        double[] re = new double[OFDMLayout.SYMBOL];
+        double[] im = new double[OFDMLayout.SYMBOL];
+        double w = 2 * Math.PI * carrierFrequency / sampleRate;
+        int length = frame.symbols * OFDMLayout.SYMBOL;
+        for (int s = 0; s < frame.symbols; s++) {
+            frame.symbol(s, re, im);
+            int base = s * OFDMLayout.SYMBOL;
+            for (int n = 0; n < OFDMLayout.SYMBOL; n++) {
+                out[off + base + n] = mix(re[n], im[n], w * (base + n));
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 逐个符号生成PCM样本，内存占用与数据长度无关
+     */
+    @Override
+    public SampleStream openStream(double carrierFrequency, @NonNull byte[] dataToModulate) {
+        return new OFDMStream(carrierFrequency, new Frame(dataToModulate));
+    }
+
+    private final class OFDMStream implements SampleStream {
+        private final Frame frame;
+        private final double w;
+        private final double[] re = new double[OFDMLayout.SYMBOL];
+        private final double[] im = new double[OFDMLayout.SYMBOL];
+        private int symbol = 0;                     // 当前符号的序号
+        private int inSymbol = OFDMLayout.SYMBOL;   // 当前符号内已输出的样本数
+
+        OFDMStream(double carrierFrequency, Frame frame) {
+            this.frame = frame;
+            this.w = 2 * Math.PI * carrierFrequency / sampleRate;
+        }
+
+        @Override
+        public int read(short[] dst, int off, int len) {
+            if (symbol == frame.symbols && inSymbol == OFDMLayout.SYMBOL) return -1;
+            int n = 0;
+            while (n < len) {
+                if (inSymbol == OFDMLayout.SYMBOL) {
+                    if (symbol == frame.symbols) break;
+                    frame.symbol(symbol++, re, im);
+                    inSymbol = 0;
+                }
+                int base = (symbol - 1) * OFDMLayout.SYMBOL;
+                int k = Math.min(len - n, OFDMLayout.SYMBOL - inSymbol);
+                for (int i = 0; i < k; i++, inSymbol++) {
+                    double v = mix(re[inSymbol], im[inSymbol], w * (base + inSymbol));
+                    dst[off + n + i] = (short) Math.round(Math.max(-1, Math.min(1, v)) * Short.MAX_VALUE);
+                }
+                n += k;
+            }
+            return n;
+        }
+    }
+
+    // 基带样本乘以 e^(jφ) 后的实部，与OFDMLayout.passband相同
+    private static double mix(double re, double im, double phase) {
+        return re * Math.cos(phase) - im * Math.sin(phase);
+    }
+
+    @Override
+    public Complex[] getBaseBand(@NonNull byte[] dataToModulate) {
+        double[][] baseband = baseband(dataToModulate);
+        Complex[] result = new Complex[baseband[0].length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new Complex(baseband[0][i], baseband[1][i]);
+        }
+        return result;
+    }
+
+    /**
+     * 调制后信号的样本数
+     * @param dataLength 待调制数据的字节数
+     */
+    public int getSignalLength(int dataLength) {
+        return (1 + layout.dataSymbols(dataLength)) * OFDMLayout.SYMBOL;
+    }
+
+    /**
+     * @return 复基带信号 {实部, 虚部}
+     */
+    double[][] baseband(byte[] data) {
+        Frame frame = new Frame(data);
+        int length = frame.symbols * OFDMLayout.SYMBOL;
+        double[] re = new double[length];
+        double[] im = new double[length];
+        double[] sr = new double[OFDMLayout.SYMBOL];
+        double[] si = new double[OFDMLayout.SYMBOL];
+        for (int s = 0; s < frame.symbols; s++) {
+            frame.symbol(s, sr, si);
+            System.arraycopy(sr, 0, re, s * OFDMLayout.SYMBOL, OFDMLayout.SYMBOL);
+            System.arraycopy(si, 0, im, s * OFDMLayout.SYMBOL, OFDMLayout.SYMBOL);
+        }
+        return new double[][]{re, im};
+    }
+
+    /**
+     * 一帧的内容：训练符号之后每个符号承载一段QPSK数据
+     * 基带信号按整帧的峰值归一化到1，构造时先把每个符号生成一遍求峰值(不保存)，
+     * 之后可以按任意顺序生成单个符号，结果与一次生成整帧相同
+     */
+    private final class Frame {
+        final int symbols;          // 包括训练符号
+        private final byte[] frame;
+        private final double[] cr, ci;
+        private final double peak;
+
+        Frame(byte[] data) {
+            if (data.length > 0xffff) {
+                throw new IllegalArgumentException("Payload too long: " + data.length);
+            }
+            symbols = getSignalLength(data.length) / OFDMLayout.SYMBOL;
+            frame = new byte[OFDMLayout.HEADER_BYTES + data.length + OFDMLayout.CRC_BYTES];
+            frame[0] = (byte) data.length;
+            frame[1] = (byte) (data.length >> 8);
+            System.arraycopy(data, 0, frame, OFDMLayout.HEADER_BYTES, data.length);
+            frame[frame.length - 1] = (byte) OFDMLayout.crc8(frame, 0, frame.length - 1);
+
+            cr = new double[layout.carriers()];
+            ci = new double[layout.carriers()];
+            for (int i = 0; i < cr.length; i++) {
+                if (layout.pilot[i]) cr[i] = layout.pilotValue(i);
+            }
+
+            double[] re = new double[OFDMLayout.SYMBOL];
+            double[] im = new double[OFDMLayout.SYMBOL];
+            double peak = 0;
+            for (int s = 0; s < symbols; s++) {
+                synthesize(s, re, im);
+                for (int n = 0; n < OFDMLayout.SYMBOL; n++) {
+                    peak = Math.max(peak, Math.sqrt(re[n] * re[n] + im[n] * im[n]));
+                }
+            }
+            this.peak = peak;
+        }
+
+        /**
+         * 第s个符号归一化后的基带信号，写入 re/im[0, SYMBOL)
+         */
+        void symbol(int s, double[] re, double[] im) {
+            synthesize(s, re, im);
+            for (int n = 0; n < OFDMLayout.SYMBOL; n++) {
+                re[n] /= peak;
+                im[n] /= peak;
+            }
+        }
+
+        private void synthesize(int s, double[] re, double[] im) {
+            if (s == 0) {
+                layout.synthesize(fft, layout.trainRe, layout.trainIm, re, im, 0);
+                return;
+            }
+            // QPSK：bit 0为实部符号，bit 1为虚部符号，0 → +，1 → -
+            double a = Math.sqrt(0.5);
+            int bit = (s - 1) * 2 * layout.data.length;
+            for (int i : layout.data) {
+                cr[i] = bitAt(frame, bit++) == 0 ? a : -a;
+                ci[i] = bitAt(frame, bit++) == 0 ? a : -a;
+            }
+            layout.synthesize(fft, cr, ci, re, im, 0);
+        }
+    }
+
+    // 低位先发，超出部分为1
+    private static int bitAt(byte[] data, int k) {
+        int i = k / Byte.SIZE;
+        if (i >= data.length) return 1;
+        return (data[i] >> (k % Byte.SIZE)) & 1;
+    }
+}
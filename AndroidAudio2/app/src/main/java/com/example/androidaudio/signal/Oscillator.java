@@ -0,0 +1,95 @@
+package com.example.androidaudio.signal;
+
+/**
+ * 查表法余弦振荡器
+ *
+ * 相位用32位定点数累加(一周为2^32，溢出即自然回绕)，高12位查余弦表，低20位做线性插值，
+ * 查表插值与Math.cos的误差小于3e-7，频率分辨率为 sampleRate/2^32，
+ * 一个符号(数千个样本)内累积的相位误差在1e-5弧度量级，远低于16bit PCM的量化误差。
+ * 切换频率时相位保持不变，相邻符号之间的信号是连续的。
+ */
+public class Oscillator {
+    private static final int TABLE_BITS = 12;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+    private static final int FRAC_BITS = 32 - TABLE_BITS;
+    private static final int FRAC_MASK = (1 << FRAC_BITS) - 1;
+    private static final double FRAC_SCALE = 1.0 / (1 << FRAC_BITS);
+    // 多一项用于插值时取 idx + 1
+    private static final double[] COS = new double[TABLE_SIZE + 1];
+    private static final float[] COS_F = new float[TABLE_SIZE + 1];
+    private static final float FRAC_SCALE_F = (float) FRAC_SCALE;
+
+    static {
+        for (int i = 0; i <= TABLE_SIZE; i++) {
+            COS[i] = Math.cos(2 * Math.PI * i / TABLE_SIZE);
+            COS_F[i] = (float) COS[i];
+        }
+    }
+
+    private final double sampleRate;
+    private int phase;
+    private int increment;
+
+    public Oscillator(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * 设置输出频率，不改变当前相位
+     */
+    public void setFrequency(double frequency) {
+        increment = (int) Math.round(frequency / sampleRate * 4294967296.0);
+    }
+
+    /**
+     * 相位归零，下一个样本为cos(0)
+     */
+    public void reset() {
+        phase = 0;
+    }
+
+    /**
+     * 生成len个样本写入 dst[off, off+len)
+     */
+    public void render(double[] dst, int off, int len) {
+        int p = phase;
+        final int inc = increment;
+        for (int i = off, end = off + len; i < end; i++) {
+            int idx = p >>> FRAC_BITS;
+            double a = COS[idx];
+            dst[i] = a + (COS[idx + 1] - a) * ((p & FRAC_MASK) * FRAC_SCALE);
+            p += inc;
+        }
+        phase = p;
+    }
+
+    /**
+     * 生成len个单精度样本写入 dst[off, off+len)，float的舍入误差(6e-8)小于查表插值的误差
+     */
+    public void render(float[] dst, int off, int len) {
+        int p = phase;
+        final int inc = increment;
+        for (int i = off, end = off + len; i < end; i++) {
+            int idx = p >>> FRAC_BITS;
+            float a = COS_F[idx];
+            dst[i] = a + (COS_F[idx + 1] - a) * ((p & FRAC_MASK) * FRAC_SCALE_F);
+            p += inc;
+        }
+        phase = p;
+    }
+
+    /**
+     * 生成len个16bit PCM样本写入 dst[off, off+len)，幅值为amplitude
+     */
+    public void render(short[] dst, int off, int len, double amplitude) {
+        int p = phase;
+        final int inc = increment;
+        for (int i = off, end = off + len; i < end; i++) {
+            int idx = p >>> FRAC_BITS;
+            double a = COS[idx];
+            dst[i] = (short) Math.round((a + (COS[idx + 1] - a) * ((p & FRAC_MASK) * FRAC_SCALE)) * amplitude);
+            p += inc;
+        }
+        phase = p;
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.androidaudio.signal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 前导码匹配滤波器，给出帧起点的样本位置
+ *
+ * 模板是BFSKModulator发出的前导码(0x55 × PREAMBLE_C，低位先发)波形。
+ * 接收信号的初相未知，因此模板取复数形式 e^(jφ(t))，以相关值的模作为非相干匹配滤波输出。
+ * 收发两端的时钟偏差相当于一个频偏(1000ppm在7kHz处为7Hz)，在整个前导码上相干积分时相位会转过好几圈，
+ * 因此模板按符号分段，每段单独相关后把各段相关值的模相加(段间非相干)，
+ * 再除以模板和信号窗口的能量做归一化：完全对齐的无噪声信号得分为1，与信号幅度无关。
+ * BFSK前导码只有f0、f1两种段，每种只需要算一次相关，第j段的相关值就是同种段的相关值平移j个符号。
+ *
+ * 相关用FFT的overlap-save分块计算，每块长度 L = 2^⌈log2(2m)⌉(m为模板长度)，
+ * 每块得到 L-m+1 个有效的得分，总代价为 O(n log n)，而直接计算是 O(n·m)。
+ *
+ * 前导码是0101...交替的，以两个符号为周期：提前2个符号时得分约为 √(14/16) ≈ 0.935，
+ * 推后2个符号时如果数据的前两位恰好是10，得分与真正的起点一样高。
+ * 因此在第一次超过阈值后记录之后一个模板长度内的得分，取最大值 best，
+ * 再取最早一个得分不低于 best 与 0.935·best 中点的峰(在一个符号内取局部最大)。
+ *
+ * 包内也可以用任意已知波形的解析信号构造，例如OFDM的训练符号(只有一段，即整体相干)。
+ * 每个并行的块使用构造时分配好的一组缓冲区(Scratch)，查找过程中不再分配L大小的数组，
+ * 因此同一个检测器的find不能并发调用，find按实例加锁。
+ */
+public class PreambleDetector {
+    public static final double DEFAULT_THRESHOLD = 0.5;
+
+    private final int m;            // 模板长度(样本数)
+    private final int L;            // FFT块长度
+    private final int step;         // 每块的有效输出数
+    private final int peakWindow;   // 取峰时在多少个样本内找局部最大
+    private final double ambiguity; // 相对于最高峰的取峰比例
+    private final FFT fft;
+    private final int segment;              // 每段的样本数
+    private final int[] shapeAt;            // 第j段使用的段波形
+    private final double[][] shapeRe, shapeIm;  // 各种段波形的FFT
+    private final double tplEnergy;         // 模板的能量 Σ|c|²
+    private final double threshold;
+    private final Scratch[] scratch;        // 每个并行块一组缓冲区
+
+    // 一个FFT块用到的缓冲区
+    private static final class Scratch {
+        final double[] re, im, yr, yi;
+        final double[] energy;          // 块内样本平方的前缀和
+        final double[][] magnitude;     // 各种段波形相关值的模
+        final double[] scores;
+        int count;                      // scores中的有效个数
+
+        Scratch(int L, int shapes, int step) {
+            re = new double[L];
+            im = new double[L];
+            yr = new double[L];
+            yi = new double[L];
+            energy = new double[L + 1];
+            magnitude = new double[shapes][L];
+            scores = new double[step];
+        }
+    }
+
+    /**
+     * @param fs               采样率
+     * @param f0               bit 0的频率
+     * @param f1               bit 1的频率
+     * @param samplesPerSymbol 每个符号的样本数
+     */
+    public PreambleDetector(double fs, double f0, double f1, int samplesPerSymbol) {
+        this(fs, f0, f1, samplesPerSymbol, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold 归一化相关值的检测阈值，(0, 1]
+     */
+    public PreambleDetector(double fs, double f0, double f1, int samplesPerSymbol, double threshold) {
+        this(new double[][][]{tone(fs, f0, samplesPerSymbol), tone(fs, f1, samplesPerSymbol)},
+                preamble_bits(), samplesPerSymbol,
+                (1 + Math.sqrt((FrameAssembler.PREAMBLE_C * Byte.SIZE - 2.0) / (FrameAssembler.PREAMBLE_C * Byte.SIZE))) / 2,
+                threshold);
+    }
+
+    /**
+     * 检测任意已知波形(如OFDM的训练符号)，整个模板相干积分
+     * @param template   模板的解析信号 {实部, 虚部}，实部即发送的实信号
+     * @param peakWindow 取峰时在多少个样本内找局部最大
+     * @param ambiguity  取最早一个得分不低于 ambiguity·最高分 的峰，模板没有周期性时取1
+     * @param threshold  归一化相关值的检测阈值，(0, 1]
+     */
+    PreambleDetector(double[][] template, int peakWindow, double ambiguity, double threshold) {
+        this(new double[][][]{template}, new int[]{0}, peakWindow, ambiguity, threshold);
+    }
+
+    /**
+     * 检测由若干段拼接成的波形，段内相干、段间非相干
+     * @param shapes     各种段波形的解析信号 {实部, 虚部}，长度相同
+     * @param shapeAt    第j段使用的段波形
+     * @param peakWindow 取峰时在多少个样本内找局部最大
+     * @param ambiguity  取最早一个得分不低于 ambiguity·最高分 的峰
+     * @param threshold  归一化相关值的检测阈值，(0, 1]
+     */
+    PreambleDetector(double[][][] shapes, int[] shapeAt, int peakWindow, double ambiguity, double threshold) {
+        this.segment = shapes[0][0].length;
+        this.shapeAt = shapeAt;
+        this.m = segment * shapeAt.length;
+        this.L = FFT.nextPowerOfTwo(2 * m);
+        this.step = L - m + 1;
+        this.fft = new FFT(L);
+        this.peakWindow = peakWindow;
+        this.ambiguity = ambiguity;
+        this.threshold = threshold;
+
+        shapeRe = new double[shapes.length][L];
+        shapeIm = new double[shapes.length][L];
+        double[] energy = new double[shapes.length];
+        for (int k = 0; k < shapes.length; k++) {
+            for (int i = 0; i < segment; i++) {
+                shapeRe[k][i] = shapes[k][0][i];
+                shapeIm[k][i] = shapes[k][1][i];
+                energy[k] += shapeRe[k][i] * shapeRe[k][i] + shapeIm[k][i] * shapeIm[k][i];
+            }
+            fft.forward(shapeRe[k], shapeIm[k]);
+        }
+        double total = 0;
+        for (int k : shapeAt) total += energy[k];
+        this.tplEnergy = total;
+
+        scratch = new Scratch[Math.max(1, ForkJoinPool.commonPool().getParallelism())];
+        for (int k = 0; k < scratch.length; k++) {
+            scratch[k] = new Scratch(L, shapes.length, step);
+        }
+    }
+
+    // 一个符号的复单频信号 e^(j2πf·t)
+    private static double[][] tone(double fs, double f, int samplesPerSymbol) {
+        double[] re = new double[samplesPerSymbol];
+        double[] im = new double[samplesPerSymbol];
+        double inc = 2 * Math.PI * f / fs;
+        for (int i = 0; i < samplesPerSymbol; i++) {
+            re[i] = Math.cos(inc * i);
+            im[i] = Math.sin(inc * i);
+        }
+        return new double[][]{re, im};
+    }
+
+    // 前导码各符号的bit，低位先发
+    private static int[] preamble_bits() {
+        int[] bits = new int[FrameAssembler.PREAMBLE_C * Byte.SIZE];
+        for (int b = 0; b < bits.length; b++) {
+            bits[b] = (FrameAssembler.PREAMBLE >> (b % Byte.SIZE)) & 1;
+        }
+        return bits;
+    }
+
+    /**
+     * @return 模板长度(样本数)
+     */
+    public int templateLength() {
+        return m;
+    }
+
+    public int find(Samples signal) {
+        return find(signal, 0);
+    }
+
+    /**
+     * 从from开始查找前导码
+     * 各FFT块相互独立，每次取线程池并行度个块并行计算，再按顺序检查得分，结果与逐块计算相同
+     * @return 前导码第一个样本的位置，找不到时返回-1
+     */
+    public synchronized int find(Samples signal, int from) {
+        int last = signal.length() - m;   // 最后一个完整的模板位置
+        if (from > last) return -1;
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        double[] scores = null;     // 第一次超过阈值之后的得分
+        int first = -1;
+        int searchEnd = last;
+
+        for (int b = from; b <= searchEnd; ) {
+            int blocks = Math.min(scratch.length, (searchEnd - b) / step + 1);
+            if (blocks == 1) {
+                correlate(signal, b, searchEnd, scratch[0]);
+            } else {
+                List<ForkJoinTask<?>> tasks = new ArrayList<>(blocks);
+                for (int k = 0; k < blocks; k++) {
+                    final int base = b + k * step, end = searchEnd;
+                    final Scratch w = scratch[k];
+                    tasks.add(ForkJoinTask.adapt(() -> correlate(signal, base, end, w)));
+                }
+                for (ForkJoinTask<?> task : tasks) pool.execute(task);
+                for (ForkJoinTask<?> task : tasks) task.join();
+            }
+
+            for (int k = 0; k < blocks; k++) {
+                double[] block = scratch[k].scores;
+                for (int s = 0; s < scratch[k].count && b + s <= searchEnd; s++) {
+                    double score = block[s];
+                    if (first < 0) {
+                        if (score < threshold) continue;
+                        first = b + s;
+                        searchEnd = Math.min(last, first + m + peakWindow);
+                        scores = new double[searchEnd - first + 1];
+                    }
+                    scores[b + s - first] = score;
+                }
+                b += step;
+            }
+        }
+        if (first < 0) return -1;
+        return first + pick_peak(scores);
+    }
+
+    // 一个FFT块：位置 [b, min(b+step-1, end)] 的归一化相关值，结果写入w.scores
+    private void correlate(Samples signal, int b, int end, Scratch w) {
+        int n = signal.length();
+        double[] re = w.re, im = w.im, energy = w.energy;
+        int len = Math.min(L, n - b);
+        signal.get(b, re, 0, len);
+        Arrays.fill(re, len, L, 0);
+        Arrays.fill(im, 0);
+        for (int i = 0; i < L; i++) {
+            energy[i + 1] = energy[i] + re[i] * re[i];
+        }
+
+        // 每种段波形 y[s] = Σ x[b+s+k]·conj(c[k])，即 IFFT(X·conj(C))，只保留模
+        fft.forward(re, im);
+        double[][] magnitude = w.magnitude;
+        double[] yr = w.yr, yi = w.yi;
+        for (int k = 0; k < shapeRe.length; k++) {
+            double[] cr = shapeRe[k], ci = shapeIm[k];
+            for (int i = 0; i < L; i++) {
+                yr[i] = re[i] * cr[i] + im[i] * ci[i];
+                yi[i] = im[i] * cr[i] - re[i] * ci[i];
+            }
+            fft.inverse(yr, yi);
+            for (int i = 0; i < L; i++) {
+                magnitude[k][i] = Math.sqrt(yr[i] * yr[i] + yi[i] * yi[i]);
+            }
+        }
+
+        double[] scores = w.scores;
+        w.count = Math.min(step, end - b + 1);
+        for (int s = 0; s < w.count; s++) {
+            double e = energy[s + m] - energy[s];
+            if (e <= 0) {
+                scores[s] = 0;
+                continue;
+            }
+            double y = 0;
+            for (int j = 0; j < shapeAt.length; j++) {
+                y += magnitude[shapeAt[j]][s + j * segment];
+            }
+            // 实信号 Re{A·c} 与复模板相关的模为 A·Ec/2，能量乘积的平方根为 A·Ec/√2，乘√2后归一化到1
+            scores[s] = Math.sqrt(2 * y * y / (e * tplEnergy));
+        }
+    }
+
+    // 最早一个接近最高峰的峰的位置
+    private int pick_peak(double[] scores) {
+        double best = 0;
+        for (double v : scores) best = Math.max(best, v);
+        int i = 0;
+        while (scores[i] < best * ambiguity) i++;
+        int peak = i;
+        for (int j = i; j < Math.min(scores.length, i + peakWindow); j++) {
+            if (scores[j] > scores[peak]) peak = j;
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.androidaudio.signal;
+
+/**
+ * GF(256)上的Reed-Solomon码(系统码)
+ *
+ * 本原多项式 x^8+x^4+x^3+x^2+1 (0x11d)，生成多项式的根为 α^0 ~ α^(parity-1)。
+ * 数据按每块最多 255-parity 字节分块(缩短码)，每块后附parity个校验字节，每块最多纠正 parity/2 个字节错误，
+ * 对一个字节内连续出错的突发错误很有效。
+ * 解码按硬判决进行：伴随式 → Berlekamp-Massey求错误位置多项式 → Chien搜索 → Forney算法求错误值，
+ * 乘除法查对数/反对数表。
+ */
+public class ReedSolomonCodec implements FecCodec {
+    public static final int DEFAULT_PARITY = 8;
+
+    private static final int[] EXP = new int[512];  // α^i，长度加倍以省去取模
+    private static final int[] LOG = new int[256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if ((x & 0x100) != 0) x ^= 0x11d;
+        }
+        for (int i = 255; i < EXP.length; i++) {
+            EXP[i] = EXP[i - 255];
+        }
+    }
+
+    private final int parity;
+    private final int blockData;        // 每块的最大数据字节数
+    private final int[] generator;      // 生成多项式，高次在前，generator[0] = 1
+    // 工作数组
+    private final int[] block = new int[255];
+    private final int[] syndromes;
+    private final int[] lambda, prev, temp;     // 错误位置多项式，低次在前
+    private final int[] omega;                  // 错误值多项式，低次在前
+
+    /**
+     * @param parity 每块的校验字节数，1 ~ 254
+     */
+    public ReedSolomonCodec(int parity) {
+        if (parity < 1 || parity > 254) {
+            throw new IllegalArgumentException("Unsupported parity length " + parity);
+        }
+        this.parity = parity;
+        this.blockData = 255 - parity;
+        this.generator = new int[parity + 1];
+        generator[0] = 1;
+        // g(x) = (x + α^0)(x + α^1)...(x + α^(parity-1))
+        for (int i = 0; i < parity; i++) {
+            for (int j = i + 1; j > 0; j--) {
+                generator[j] ^= mul(generator[j - 1], EXP[i]);
+            }
+        }
+        this.syndromes = new int[parity];
+        this.lambda = new int[parity + 1];
+        this.prev = new int[parity + 1];
+        this.temp = new int[parity + 1];
+        this.omega = new int[parity];
+    }
+
+    @Override
+    public int encodedLength(int dataLength) {
+        return dataLength + blocks(dataLength) * parity;
+    }
+
+    @Override
+    public void encode(byte[] data, int off, int len, byte[] out, int outOff) {
+        int[] rem = block;
+        while (len > 0) {
+            int k = Math.min(len, blockData);
+            // 校验字节为 d(x)·x^parity 除以 g(x) 的余式
+            for (int j = 0; j < parity; j++) rem[j] = 0;
+            for (int i = 0; i < k; i++) {
+                int d = data[off + i] & 0xff;
+                out[outOff + i] = (byte) d;
+                int fb = d ^ rem[0];
+                for (int j = 0; j < parity - 1; j++) {
+                    rem[j] = rem[j + 1] ^ mul(fb, generator[j + 1]);
+                }
+                rem[parity - 1] = mul(fb, generator[parity]);
+            }
+            for (int j = 0; j < parity; j++) {
+                out[outOff + k + j] = (byte) rem[j];
+            }
+            off += k;
+            outOff += k + parity;
+            len -= k;
+        }
+    }
+
+    @Override
+    public int decode(float[] soft, int softOff, int len, byte[] out, int outOff) {
+        int corrected = 0;
+        boolean failed = false;
+        while (len > 0) {
+            int k = Math.min(len, blockData);
+            int n = k + parity;
+            for (int i = 0; i < n; i++) {
+                block[i] = FecCodec.hardByte(soft, softOff + i * Byte.SIZE) & 0xff;
+            }
+            int e = decode_block(n);
+            if (e < 0) failed = true;
+            else corrected += e;
+            for (int i = 0; i < k; i++) {
+                out[outOff + i] = (byte) block[i];
+            }
+            softOff += n * Byte.SIZE;
+            outOff += k;
+            len -= k;
+        }
+        return failed ? -1 : corrected;
+    }
+
+    private int blocks(int dataLength) {
+        return (dataLength + blockData - 1) / blockData;
+    }
+
+    // 原地纠正 block[0, n)，返回纠正的字节数，无法纠正时返回-1
+    // block[i] 是码字多项式中 x^(n-1-i) 的系数
+    private int decode_block(int n) {
+        if (!compute_syndromes(n)) return 0;
+
+        // Berlekamp-Massey
+        for (int i = 0; i <= parity; i++) {
+            lambda[i] = 0;
+            prev[i] = 0;
+        }
+        lambda[0] = 1;
+        prev[0] = 1;
+        int errors = 0;     // 错误个数L
+        int shift = 1;
+        int b = 1;
+        for (int r = 0; r < parity; r++) {
+            int delta = syndromes[r];
+            for (int i = 1; i <= errors; i++) {
+                delta ^= mul(lambda[i], syndromes[r - i]);
+            }
+            if (delta == 0) {
+                shift++;
+                continue;
+            }
+            int coef = div(delta, b);
+            if (2 * errors <= r) {
+                System.arraycopy(lambda, 0, temp, 0, parity + 1);
+                for (int i = shift; i <= parity; i++) {
+                    lambda[i] ^= mul(coef, prev[i - shift]);
+                }
+                errors = r + 1 - errors;
+                System.arraycopy(temp, 0, prev, 0, parity + 1);
+                b = delta;
+                shift = 1;
+            } else {
+                for (int i = shift; i <= parity; i++) {
+                    lambda[i] ^= mul(coef, prev[i - shift]);
+                }
+                shift++;
+            }
+        }
+        if (2 * errors > parity) return -1;
+
+        // Ω(x) = S(x)Λ(x) mod x^parity
+        for (int i = 0; i < parity; i++) {
+            int v = 0;
+            for (int j = 0; j <= i; j++) {
+                v ^= mul(syndromes[j], lambda[i - j]);
+            }
+            omega[i] = v;
+        }
+
+        // Chien搜索：Λ(α^-p) = 0 表示 x^p 处有错误，再由Forney算法 e = X·Ω(X^-1)/Λ'(X^-1) 求错误值
+        int found = 0;
+        for (int p = 0; p < n; p++) {
+            int inv = (255 - p) % 255;     // X^-1 = α^inv
+            if (eval(lambda, errors + 1, inv) != 0) continue;
+            int dl = 0;
+            for (int i = 1; i <= errors; i += 2) {
+                dl ^= mul(lambda[i], EXP[(inv * (i - 1)) % 255]);
+            }
+            if (dl == 0) return -1;
+            int e = mul(EXP[p], div(eval(omega, parity, inv), dl));
+            block[n - 1 - p] ^= e;
+            found++;
+        }
+        if (found != errors) return -1;
+        return compute_syndromes(n) ? -1 : found;
+    }
+
+    // 计算 S_j = c(α^j)，有非零项时返回true
+    private boolean compute_syndromes(int n) {
+        boolean nonzero = false;
+        for (int j = 0; j < parity; j++) {
+            int s = 0;
+            for (int i = 0; i < n; i++) {
+                s = mul(s, EXP[j]) ^ block[i];
+            }
+            syndromes[j] = s;
+            nonzero |= s != 0;
+        }
+        return nonzero;
+    }
+
+    // 低次在前的多项式 poly[0, len) 在 x = α^e 处的值
+    private static int eval(int[] poly, int len, int e) {
+        int v = 0;
+        for (int i = 0; i < len; i++) {
+            v ^= mul(poly[i], EXP[(e * i) % 255]);
+        }
+        return v;
+    }
+
+    private static int mul(int a, int b) {
+        if (a == 0 || b == 0) return 0;
+        return EXP[LOG[a] + LOG[b]];
+    }
+
+    private static int div(int a, int b) {
+        if (a == 0) return 0;
+        return EXP[LOG[a] + 255 - LOG[b]];
+    }
+}
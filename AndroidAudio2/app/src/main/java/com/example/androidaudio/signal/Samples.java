@@ -0,0 +1,152 @@
+package com.example.androidaudio.signal;
+
+import java.nio.ShortBuffer;
+
+/**
+ * 只读的信号样本序列，值域[-1, 1]
+ *
+ * 解调器通过它按窗口读取信号，不要求整段信号以double[]的形式放在堆上，
+ * 例如可以直接包装内存映射的PCM文件。
+ * 批量解调时多个线程会同时调用get，实现需要支持并发读取。
+ */
+public interface Samples {
+    /**
+     * @return 样本数
+     */
+    int length();
+
+    /**
+     * 读取 [index, index+len) 的样本写入 dst[off, off+len)
+     */
+    void get(int index, double[] dst, int off, int len);
+
+    /**
+     * 读取 [index, index+len) 的样本写入单精度的 dst[off, off+len)
+     * 默认经过一个临时的double数组，常用的实现都直接转换
+     */
+    default void get(int index, float[] dst, int off, int len) {
+        double[] tmp = new double[len];
+        get(index, tmp, 0, len);
+        for (int i = 0; i < len; i++) {
+            dst[off + i] = (float) tmp[i];
+        }
+    }
+
+    /**
+     * @return 样本本身是否只有单精度(如float[]、16bit PCM)，解调器据此选择窗口的精度，
+     * 双精度的样本按double读取，不会被截断成float
+     */
+    default boolean single() {
+        return false;
+    }
+
+    /**
+     * @return 从offset开始的视图，视图的第i个样本是本序列的第offset+i个样本
+     */
+    default Samples skip(final int offset) {
+        final Samples base = this;
+        return new Samples() {
+            @Override
+            public int length() {
+                return Math.max(0, base.length() - offset);
+            }
+
+            @Override
+            public void get(int index, double[] dst, int off, int len) {
+                base.get(offset + index, dst, off, len);
+            }
+
+            @Override
+            public void get(int index, float[] dst, int off, int len) {
+                base.get(offset + index, dst, off, len);
+            }
+
+            @Override
+            public boolean single() {
+                return base.single();
+            }
+        };
+    }
+
+    static Samples of(final double[] data) {
+        return new Samples() {
+            @Override
+            public int length() {
+                return data.length;
+            }
+
+            @Override
+            public void get(int index, double[] dst, int off, int len) {
+                System.arraycopy(data, index, dst, off, len);
+            }
+
+            @Override
+            public void get(int index, float[] dst, int off, int len) {
+                for (int i = 0; i < len; i++) {
+                    dst[off + i] = (float) data[index + i];
+                }
+            }
+        };
+    }
+
+    /**
+     * 包装单精度的样本，长时间的录音以float[]保存时内存减半
+     */
+    static Samples of(final float[] data) {
+        return new Samples() {
+            @Override
+            public int length() {
+                return data.length;
+            }
+
+            @Override
+            public void get(int index, double[] dst, int off, int len) {
+                for (int i = 0; i < len; i++) {
+                    dst[off + i] = data[index + i];
+                }
+            }
+
+            @Override
+            public void get(int index, float[] dst, int off, int len) {
+                System.arraycopy(data, index, dst, off, len);
+            }
+
+            @Override
+            public boolean single() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * 包装16bit PCM样本，按 s / 32767.0 换算，与AudioUtils.PCMToDouble一致
+     * 只使用绝对位置读取，不改变pcm的position，可以被多个线程同时读取
+     */
+    static Samples of(final ShortBuffer pcm) {
+        return new Samples() {
+            @Override
+            public int length() {
+                return pcm.limit();
+            }
+
+            @Override
+            public void get(int index, double[] dst, int off, int len) {
+                for (int i = 0; i < len; i++) {
+                    dst[off + i] = pcm.get(index + i) / 32767.0;
+                }
+            }
+
+            @Override
+            public void get(int index, float[] dst, int off, int len) {
+                for (int i = 0; i < len; i++) {
+                    dst[off + i] = pcm.get(index + i) / 32767f;
+                }
+            }
+
+            @Override
+            public boolean single() {
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.androidaudio.signal;
+
+/**
+ * 基于FFT的短时频谱(声谱图)
+ *
+ * 每个窗口加窗后做一次实数FFT，得到 0 ~ fs/2 全部 size/2+1 个频点的幅值，
+ * 同时监听多少个载波的代价都一样，适合多载波/多进制FSK。
+ * 实数FFT用 size/2 点的复数FFT实现：偶数、奇数样本分别作为实部和虚部，变换后再拆分，
+ * 拆分用的旋转因子和窗函数都在构造时算好。
+ *
+ * 结果按帧连续存放在一个float[]中，第t帧第k个频点为 out[t * bins() + k]。
+ * 对象构造后不再修改，可以被多个线程同时使用。
+ */
+public class Spectrogram {
+    /**
+     * 窗函数，取周期形式 w[i] = a - (1-a)·cos(2πi/size)
+     */
+    public enum Window {
+        RECTANGULAR,
+        HANN,
+        HAMMING
+    }
+
+    private final double sampleRate;
+    private final int size;
+    private final int hop;
+    private final int half;
+    private final FFT fft;
+    private final double[] window;
+    private final double[] cos, sin;    // 拆分用的旋转因子 e^(-2πik/size)，k ≤ size/2
+
+    /**
+     * @param sampleRate 采样率
+     * @param size       窗口长度(FFT点数)，2的幂，至少为2
+     * @param hop        相邻窗口起点的间隔
+     * @param window     窗函数
+     */
+    public Spectrogram(double sampleRate, int size, int hop, Window window) {
+        if (size < 2 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("Spectrogram size must be a power of 2: " + size);
+        }
+        if (hop < 1) throw new IllegalArgumentException("hop must be positive: " + hop);
+        this.sampleRate = sampleRate;
+        this.size = size;
+        this.hop = hop;
+        this.half = size / 2;
+        this.fft = new FFT(half);
+
+        this.window = new double[size];
+        double a = window == Window.HANN ? 0.5 : window == Window.HAMMING ? 0.54 : 1;
+        for (int i = 0; i < size; i++) {
+            this.window[i] = a - (1 - a) * Math.cos(2 * Math.PI * i / size);
+        }
+
+        this.cos = new double[half + 1];
+        this.sin = new double[half + 1];
+        for (int k = 0; k <= half; k++) {
+            cos[k] = Math.cos(2 * Math.PI * k / size);
+            sin[k] = -Math.sin(2 * Math.PI * k / size);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int hop() {
+        return hop;
+    }
+
+    /**
+     * @return 每帧的频点数 size/2+1
+     */
+    public int bins() {
+        return half + 1;
+    }
+
+    /**
+     * @return 第k个频点的中心频率
+     */
+    public double frequency(int k) {
+        return k * sampleRate / size;
+    }
+
+    /**
+     * @return 离frequency最近的频点
+     */
+    public int bin(double frequency) {
+        int k = (int) Math.round(frequency * size / sampleRate);
+        return Math.max(0, Math.min(half, k));
+    }
+
+    /**
+     * @return 长度为length的信号可以得到的完整窗口数
+     */
+    public int frames(int length) {
+        return length < size ? 0 : (length - size) / hop + 1;
+    }
+
+    public float[] compute(Samples data) {
+        return compute(data, 0, frames(data.length()));
+    }
+
+    /**
+     * 计算第 [from, to) 帧，第t帧的窗口为 [t*hop, t*hop+size)
+     * @return (to-from) * bins() 个幅值
+     */
+    public float[] compute(Samples data, int from, int to) {
+        float[] out = new float[(to - from) * bins()];
+        compute(data, from, to, out, 0);
+        return out;
+    }
+
+    /**
+     * 计算第 [from, to) 帧，写入 out[off, off + (to-from)*bins())
+     */
+    public void compute(Samples data, int from, int to, float[] out, int off) {
+        double[] frame = new double[size];
+        double[] re = new double[half];
+        double[] im = new double[half];
+        for (int t = from; t < to; t++, off += bins()) {
+            data.get(t * hop, frame, 0, size);
+            magnitudes(frame, re, im, out, off);
+        }
+    }
+
+    // 一帧的幅值 |X[k]|，k = 0..size/2
+    private void magnitudes(double[] frame, double[] re, double[] im, float[] out, int off) {
+        for (int i = 0; i < half; i++) {
+            re[i] = frame[2 * i] * window[2 * i];
+            im[i] = frame[2 * i + 1] * window[2 * i + 1];
+        }
+        fft.forward(re, im);
+        // X[k] = E[k] + W^k·O[k]，E = (Z[k] + conj(Z[half-k]))/2，O = (Z[k] - conj(Z[half-k]))/2i
+        for (int k = 0; k <= half; k++) {
+            int a = k == half ? 0 : k;
+            int b = k == 0 ? 0 : half - k;
+            double er = (re[a] + re[b]) / 2, ei = (im[a] - im[b]) / 2;
+            double or = (im[a] + im[b]) / 2, oi = (re[b] - re[a]) / 2;
+            double xr = er + cos[k] * or - sin[k] * oi;
+            double xi = ei + cos[k] * oi + sin[k] * or;
+            out[off + k] = (float) Math.sqrt(xr * xr + xi * xi);
+        }
+    }
+}
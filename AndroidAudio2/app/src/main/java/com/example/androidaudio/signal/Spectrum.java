@@ -0,0 +1,68 @@
+package com.example.androidaudio.signal;
+
+/**
+ * STFT得到的各频率幅值序列
+ *
+ * 每个频率对应一条扁平的double[]，offset/length描述当前可见的区间，
+ * 截取(view)只改变区间，不复制数据。
+ */
+public class Spectrum {
+    private final double[][] tracks;
+    private final int offset;
+    private final int length;
+
+    public Spectrum(double[][] tracks, int offset, int length) {
+        this.tracks = tracks;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public Spectrum(double[][] tracks) {
+        this(tracks, 0, tracks.length == 0 ? 0 : tracks[0].length);
+    }
+
+    /**
+     * @return 频率个数
+     */
+    public int tracks() {
+        return tracks.length;
+    }
+
+    /**
+     * @return 视图内的帧数
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return 视图起点在底层数组中的下标
+     */
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * 第j个频率在视图内第i帧的幅值
+     */
+    public double get(int j, int i) {
+        return tracks[j][offset + i];
+    }
+
+    /**
+     * 第j个频率的底层数组，有效数据为 [offset(), offset() + length())
+     */
+    public double[] track(int j) {
+        return tracks[j];
+    }
+
+    /**
+     * 截取视图内 [from, to) 的帧，与原对象共享数据
+     */
+    public Spectrum view(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException("view [" + from + ", " + to + ") of " + length);
+        }
+        return new Spectrum(tracks, offset + from, to - from);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.androidaudio.signal;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 按录音和解调参数缓存BFSKDemodulator.spectrum()的结果
+ *
+ * 键由录音的标识(文件路径、修改时间、大小，见source)和决定频谱的参数(fs、f0、f1、N、d)组成，
+ * 与符号时间、纠错编码无关，同一段录音换这些参数重新解调时不需要重新读取文件和计算STFT。
+ * 按最近使用的顺序淘汰，缓存的频谱总字节数不超过预算；单个超过预算的频谱不缓存。
+ * 方法都是同步的，计算频谱时不持有锁，两个线程同时未命中时各自计算一次。
+ */
+public class SpectrumCache {
+    private final long budget;
+    private final LinkedHashMap<String, Spectrum> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits, misses;
+
+    /**
+     * @param budget 缓存的频谱最多占用的字节数
+     */
+    public SpectrumCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return 录音文件的标识，文件被重新录制后(修改时间或大小改变)标识随之改变
+     */
+    public static String source(File file) {
+        return file.getAbsolutePath() + '|' + file.lastModified() + '|' + file.length();
+    }
+
+    /**
+     * 取缓存的频谱，没有时用demodulator计算并放入缓存
+     * @param source 录音的标识，见source(File)
+     * @param signal 录音的样本，只在未命中时读取
+     */
+    public Spectrum get(String source, BFSKDemodulator demodulator, Samples signal) {
+        String key = source + '#' + demodulator.spectrumKey();
+        synchronized (this) {
+            Spectrum X = entries.get(key);
+            if (X != null) {
+                hits++;
+                return X;
+            }
+            misses++;
+        }
+        Spectrum X = demodulator.spectrum(signal);
+        put(key, X);
+        return X;
+    }
+
+    private synchronized void put(String key, Spectrum X) {
+        long size = size_of(X);
+        if (size > budget) return;
+        Spectrum old = entries.put(key, X);
+        if (old != null) bytes -= size_of(old);
+        bytes += size;
+        Iterator<Spectrum> it = entries.values().iterator();
+        while (bytes > budget && it.hasNext()) {
+            bytes -= size_of(it.next());
+            it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return 缓存的频谱个数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return 缓存的频谱占用的字节数
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    private static long size_of(Spectrum X) {
+        long size = 0;
+        for (int j = 0; j < X.tracks(); j++) {
+            size += (long) X.track(j).length * Double.BYTES;
+        }
+        return size;
+    }
+}
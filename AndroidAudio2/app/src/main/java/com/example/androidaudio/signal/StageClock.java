@@ -0,0 +1,37 @@
+package com.example.androidaudio.signal;
+
+/**
+ * 依次记录解调各阶段的耗时和内存分配，每个阶段结束时调用lap
+ * 统计关闭时使用OFF，lap只判断一次，不读时钟
+ */
+final class StageClock {
+    static final StageClock OFF = new StageClock(DemodMetrics.NONE);
+
+    private final DemodMetrics metrics;
+    private long nanos;
+    private long bytes;
+
+    private StageClock(DemodMetrics metrics) {
+        this.metrics = metrics;
+        if (metrics.enabled()) {
+            nanos = System.nanoTime();
+            bytes = metrics.allocatedBytes();
+        }
+    }
+
+    static StageClock start(DemodMetrics metrics) {
+        return metrics.enabled() ? new StageClock(metrics) : OFF;
+    }
+
+    /**
+     * 上一次lap(或start)以来的部分记为stage
+     */
+    void lap(DemodMetrics.Stage stage) {
+        if (!metrics.enabled()) return;
+        long now = System.nanoTime();
+        long allocated = metrics.allocatedBytes();
+        metrics.stage(stage, now - nanos, allocated - bytes);
+        nanos = now;
+        bytes = allocated;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.androidaudio.signal;
+
+/**
+ * 符号级的软判决：在一个符号内累加f0/f1两个频点的能量，按能量大小判决
+ *
+ * 比较两个频率上积分后的能量即非相干FSK的平方律判决。
+ * ln(E1/E0) 并不是严格意义上的对数似然比(最佳的LLR与信噪比有关，需要用到贝塞尔函数)，
+ * 这里只把它当作置信度：大于0判为1，绝对值越大越可靠；
+ * 为1的"概率" E1/(E0+E1) 正好等于 1/(1+e^-llr)，可以直接交给FecCodec。
+ * STFT的窗口比步长长，符号边界附近的窗口有一部分落在相邻符号上，按窗口落在本符号内的比例加权(overlap)，
+ * 相当于只在符号的时间范围内积分。
+ * 每一步只做乘加，只有取llr时才计算一次对数。
+ */
+public class SymbolSlicer {
+    private static final double MIN_PROBABILITY = 1e-6;    // 换算llr时概率的下限，llr限制在约±13.8以内
+    private double e0, e1;
+    private double weight;
+    private int hops;
+
+    public void reset() {
+        e0 = 0;
+        e1 = 0;
+        weight = 0;
+        hops = 0;
+    }
+
+    /**
+     * 累加一步的两个频点幅值
+     */
+    public void add(double m0, double m1) {
+        add(m0, m1, 1);
+    }
+
+    /**
+     * 按权重累加一步的两个频点幅值
+     * @param weight 该步窗口落在符号内的比例，见overlap
+     */
+    public void add(double m0, double m1, double weight) {
+        e0 += weight * m0 * m0;
+        e1 += weight * m1 * m1;
+        this.weight += weight;
+        hops++;
+    }
+
+    /**
+     * 分析窗口落在符号内的比例
+     * @param centre 窗口中心相对符号起点的样本数
+     * @param window 窗口长度
+     * @param symbol 符号长度
+     */
+    public static double overlap(double centre, int window, double symbol) {
+        double inside = Math.min(centre + window / 2.0, symbol) - Math.max(centre - window / 2.0, 0);
+        return Math.max(0, inside) / window;
+    }
+
+    /**
+     * @return 已累加的步数
+     */
+    public int hops() {
+        return hops;
+    }
+
+    /**
+     * @return 每一步两个频点的平均能量(按权重平均)
+     */
+    public double energy() {
+        return weight == 0 ? 0 : (e0 + e1) / weight;
+    }
+
+    public int bit() {
+        return e1 > e0 ? 1 : 0;
+    }
+
+    /**
+     * @return 置信度 ln(E1/E0)，与llr(float)一样限制在有限范围内(某个频点能量为0时不是无穷大)，没有能量时为0
+     */
+    public double llr() {
+        double e = e0 + e1;
+        if (e == 0) return 0;
+        double p = Math.max(MIN_PROBABILITY, Math.min(1 - MIN_PROBABILITY, e1 / e));
+        return Math.log(p / (1 - p));
+    }
+
+    /**
+     * @return 为1的概率 E1/(E0+E1)，没有能量时为0.5
+     */
+    public float probability() {
+        double e = e0 + e1;
+        return e == 0 ? 0.5f : (float) (e1 / e);
+    }
+
+    /**
+     * 由为1的概率换算置信度，概率限制在 [1e-6, 1-1e-6] 以内，硬判决的bit也能得到有限值
+     */
+    static float llr(float probability) {
+        double p = Math.max(MIN_PROBABILITY, Math.min(1 - MIN_PROBABILITY, probability));
+        return (float) Math.log(p / (1 - p));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.androidaudio.signal;
+
+/**
+ * BFSK的符号定时恢复：逐步输入STFT每一步的f0/f1幅值，按跟踪到的符号边界切分成符号
+ *
+ * 第t步窗口的中心记为坐标t(相对第一个符号起点，单位为步长d)，第k个符号占据 [begin, begin+period)。
+ * 每个符号结束后，如果与前一个符号的判决不同，在它的起点附近找 D = (E1-E0)/(E1+E0) 的过零点，
+ * 在相邻两步之间线性插值得到比步长更细的位置，与预测的起点之差即定时误差(类似Gardner的过零检测)。
+ * 误差经过比例积分环路同时修正下一个边界(相位)和符号长度(收发两端的时钟偏差)，
+ * 每个符号只做一次常数时间的更新，任意长度的消息误差都有界，不需要全局重新搜索。
+ */
+public class SymbolTracker {
+    private static final double PHASE_GAIN = 0.3;       // 相位修正系数
+    private static final double RATE_GAIN = 0.02;       // 符号长度修正系数
+    private static final double MAX_RATE_ERROR = 0.01;  // 符号长度偏离标称值的上限(1%)
+
+    private final int window;
+    private final int hop;
+    private final double nominal;   // 标称的每符号步数
+    private final double[] diff;    // 最近几步的D，按步的序号循环存放
+    private final SymbolSlicer slicer = new SymbolSlicer();
+
+    private int t;              // 下一步的序号
+    private int symbols;        // 已完成的符号数
+    private double begin;       // 当前符号的起点
+    private double period;      // 当前估计的每符号步数
+    private int lastBit;
+
+    /**
+     * @param window           STFT窗口长度
+     * @param hop              STFT步长
+     * @param samplesPerSymbol 标称的每符号样本数
+     */
+    public SymbolTracker(int window, int hop, double samplesPerSymbol) {
+        this.window = window;
+        this.hop = hop;
+        this.nominal = samplesPerSymbol / hop;
+        this.diff = new double[2 * (int) Math.ceil(nominal * (1 + MAX_RATE_ERROR)) + 4];
+        reset();
+    }
+
+    public void reset() {
+        reset(0);
+    }
+
+    /**
+     * @param begin 第一个符号的起点相对第0步窗口中心的位置(步)，窗口没有对准符号起点时不为0
+     */
+    public void reset(double begin) {
+        t = 0;
+        symbols = 0;
+        this.begin = begin;
+        period = nominal;
+        lastBit = -1;
+        slicer.reset();
+    }
+
+    /**
+     * 输入一步的两个频点幅值
+     * @return 当前符号是否已结束，结束时可以由symbol()读取判决，下一次调用开始新的符号
+     */
+    public boolean hop(double m0, double m1) {
+        if (t >= begin + period) next_symbol();
+        double e0 = m0 * m0, e1 = m1 * m1;
+        diff[t % diff.length] = e0 + e1 == 0 ? 0 : (e1 - e0) / (e1 + e0);
+        slicer.add(m0, m1, SymbolSlicer.overlap((t - begin) * hop, window, period * hop));
+        t++;
+        return t >= begin + period;
+    }
+
+    /**
+     * @return 当前符号累加的能量
+     */
+    public SymbolSlicer symbol() {
+        return slicer;
+    }
+
+    /**
+     * @return 当前符号是否还没有输入任何一步
+     */
+    public boolean empty() {
+        return slicer.hops() == 0;
+    }
+
+    /**
+     * @return 估计的符号长度相对标称值的比例，大于1表示发送端的时钟比接收端慢
+     */
+    public double rate() {
+        return period / nominal;
+    }
+
+    // 当前符号结束：估计它起点处的定时误差，更新下一个符号的起点和长度
+    private void next_symbol() {
+        int bit = slicer.bit();
+        if (symbols > 0 && bit != lastBit) {
+            double error = timing_error(bit);
+            if (!Double.isNaN(error)) {
+                period += RATE_GAIN * error;
+                period = Math.max(nominal * (1 - MAX_RATE_ERROR), Math.min(nominal * (1 + MAX_RATE_ERROR), period));
+                begin += PHASE_GAIN * error;
+            }
+        }
+        lastBit = bit;
+        symbols++;
+        begin += period;
+        slicer.reset();
+    }
+
+    // 在当前符号起点前后半个符号内找从lastBit到bit方向的过零点，返回它与起点之差，找不到时返回NaN
+    private double timing_error(int bit) {
+        double sign = bit == 1 ? 1 : -1;
+        int from = Math.max(1, Math.max(t - diff.length + 1, (int) Math.floor(begin - period / 2)));
+        int to = Math.min(t - 1, (int) Math.ceil(begin + period / 2));
+        double best = Double.NaN;
+        for (int i = from; i <= to; i++) {
+            double a = diff[(i - 1) % diff.length] * sign;
+            double b = diff[i % diff.length] * sign;
+            if (a < 0 && b >= 0) {
+                double c = i - 1 + a / (a - b) - begin;
+                if (Double.isNaN(best) || Math.abs(c) < Math.abs(best)) best = c;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.androidaudio.signal;
+
+/**
+ * 单频点能量检测器(Goertzel算法)
+ *
+ * 对一个窗口计算若干指定频率的DFT幅值 |X(k)|，其中 k = round(f * len / fs)，
+ * 与原先逐点计算的 DFT(data, k) 取的是同一个频点。
+ * 每个频率每个样本只需一次乘加，全程只使用基本类型，不产生任何对象。
+ *
+ * 精度：Goertzel在数学上与该频点的DFT完全相等，两者的差别只来自浮点累加顺序，
+ * 相对于窗口内信号能量的误差在 1e-9 以内。
+ * float[]版本的输入只占一半内存，递推仍然用double(只在寄存器中)，
+ * 结果与double版本的差别只来自输入本身的舍入(相对误差约6e-8)。
+ */
+public class ToneDetector {
+    private final double fs;
+    private final double[] freqs;
+    private final int N;
+    // 完整窗口(长度为N)时每个频率的递推系数，预先计算好
+    private final double[] coeff;
+
+    /**
+     * @param fs    采样率
+     * @param freqs 需要检测的频率
+     * @param N     窗口长度
+     */
+    public ToneDetector(double fs, double[] freqs, int N) {
+        this.fs = fs;
+        this.freqs = freqs.clone();
+        this.N = N;
+        this.coeff = new double[freqs.length];
+        for (int j = 0; j < freqs.length; j++) {
+            coeff[j] = coefficient(freqs[j], N);
+        }
+    }
+
+    public int size() {
+        return freqs.length;
+    }
+
+    public double frequency(int j) {
+        return freqs[j];
+    }
+
+    public int windowLength() {
+        return N;
+    }
+
+    // 2cos(2πk/len), k为该频率在长度为len的DFT中对应的频点
+    private double coefficient(double f, int len) {
+        long k = Math.round(f * len / fs);
+        return 2 * Math.cos(2 * Math.PI * k / len);
+    }
+
+    /**
+     * 计算窗口 data[off, off+len) 上第j个频率的幅值
+     * @param data 信号
+     * @param off  窗口起点
+     * @param len  窗口长度，不足N时(信号末尾)按实际长度重新取频点，与原DFT的行为一致
+     * @param j    频率下标
+     * @return |X(k)|
+     */
+    public double magnitude(double[] data, int off, int len, int j) {
+        if (len <= 0) return 0;
+        double c = len == N ? coeff[j] : coefficient(freqs[j], len);
+        double s1 = 0, s2 = 0;
+        for (int i = off, end = off + len; i < end; i++) {
+            double s0 = data[i] + c * s1 - s2;
+            s2 = s1;
+            s1 = s0;
+        }
+        double power = s1 * s1 + s2 * s2 - c * s1 * s2;
+        return power > 0 ? Math.sqrt(power) : 0;
+    }
+
+    /**
+     * 计算单精度窗口 data[off, off+len) 上第j个频率的幅值，参数同double版本
+     */
+    public double magnitude(float[] data, int off, int len, int j) {
+        if (len <= 0) return 0;
+        double c = len == N ? coeff[j] : coefficient(freqs[j], len);
+        double s1 = 0, s2 = 0;
+        for (int i = off, end = off + len; i < end; i++) {
+            double s0 = data[i] + c * s1 - s2;
+            s2 = s1;
+            s1 = s0;
+        }
+        double power = s1 * s1 + s2 * s2 - c * s1 * s2;
+        return power > 0 ? Math.sqrt(power) : 0;
+    }
+
+    /**
+     * 计算窗口 data[off, off+len) 上所有频率的幅值
+     * @param out 第j个频率的结果写入 out[j]
+     */
+    public void magnitudes(double[] data, int off, int len, double[] out) {
+        for (int j = 0; j < freqs.length; j++) {
+            out[j] = magnitude(data, off, len, j);
+        }
+    }
+
+    public void magnitudes(float[] data, int off, int len, double[] out) {
+        for (int j = 0; j < freqs.length; j++) {
+            out[j] = magnitude(data, off, len, j);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.androidaudio.signal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.example.androidaudio.signal.BerHarness.FC;
+import static com.example.androidaudio.signal.BerHarness.FD;
+import static com.example.androidaudio.signal.BerHarness.FS;
+import static com.example.androidaudio.signal.BerHarness.TS;
+import static org.junit.Assert.*;
+
+/**
+ * BFSK在模拟信道上的误码率和误帧率，条件越差门限越宽
+ *
+ * 各条件下的完整结果表由 ./gradlew berReport(BerHarness.main) 输出，不随单元测试运行。
+ */
+public class BFSKChannelTest {
+    private BerHarness.Report run(ChannelSimulator channel, int frames) {
+        return new BerHarness(FC, FD, TS, 32, 21).run(channel, frames);
+    }
+
+    // 不使用FEC时负载中不能有结束码0xFF
+    private static byte[] payload(int length, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) data[i] = (byte) random.nextInt(0xFF);
+        return data;
+    }
+
+    @Test
+    public void cleanChannel_noBitErrors() {
+        BerHarness.Report report = run(ChannelSimulator.awgn(Double.POSITIVE_INFINITY, 1), 10);
+        assertEquals(0, report.bitErrors);
+        assertEquals(0, report.frameErrors);
+        assertTrue(report.throughput() > FS);
+    }
+
+    @Test
+    public void awgn_10dB_noBitErrors() {
+        BerHarness.Report report = run(ChannelSimulator.awgn(10, 2), 20);
+        assertEquals(0, report.bitErrors);
+        assertEquals(0, report.frameErrors);
+    }
+
+    @Test
+    public void awgn_10dB_noLead_noFrameErrors() {
+        BerHarness.Report report = run(new ChannelSimulator(10, new double[]{1}, 0, 0, 480, 8), 20);
+        assertEquals(0, report.bitErrors);
+        assertEquals(0, report.frameErrors);
+    }
+
+    @Test
+    public void awgn_0dB_lowBitErrorRate() {
+        BerHarness.Report report = run(ChannelSimulator.awgn(0, 3), 20);
+        assertTrue(report.toString(), report.ber() < 1e-2);
+        assertTrue(report.toString(), report.fer() <= 0.1);
+    }
+
+    @Test
+    public void multipathAndClockOffset_lowBitErrorRate() {
+        double[] room = ChannelSimulator.impulseResponse(FS, new double[]{0.001, 0.0035}, new double[]{-0.3, 0.2});
+        BerHarness.Report report = run(new ChannelSimulator(10, room, 200, 4800, 24000, 4), 20);
+        assertTrue(report.toString(), report.ber() < 1e-2);
+        assertTrue(report.toString(), report.fer() <= 0.1);
+    }
+
+    @Test
+    public void clockOffset_1000ppm_getFrames() {
+        // 100字节800个符号，不跟踪符号定时时1000ppm累积的偏差接近一个符号
+        byte[] payload = payload(100, 9);
+        for (double ppm : new double[]{-1000, 1000}) {
+            double[] x = new ChannelSimulator(10, new double[]{1}, ppm, 4800, 24000, 10)
+                    .apply(new BFSKModulator(FS, FD, TS).getRealSignal(FC, payload));
+            List<BFSKDemodulator.DecodeResult> frames = new BFSKDemodulator(FC, FD, TS).getFrames(Samples.of(x), 128);
+            assertEquals("ppm " + ppm, 1, frames.size());
+            assertArrayEquals("ppm " + ppm, payload, frames.get(0).msg);
+        }
+    }
+
+    @Test
+    public void clockOffset_1000ppm_stream() {
+        byte[] payload = payload(100, 11);
+        for (double ppm : new double[]{-1000, 1000}) {
+            // 流式解调只能用帧前的背景噪声估计噪声底，帧前留出一个完整的噪声窗口(1s)
+            double[] x = new ChannelSimulator(10, new double[]{1}, ppm, 48000, 48000, 12)
+                    .apply(new BFSKModulator(FS, FD, TS).getRealSignal(FC, payload));
+            List<BFSKDemodulator.DecodeResult> frames = new ArrayList<>();
+            BFSKStreamDemodulator demodulator = new BFSKStreamDemodulator(FC, FD, TS, 128, frames::add);
+            for (int off = 0; off < x.length; off += 1024) {
+                demodulator.feed(x, off, Math.min(1024, x.length - off));
+            }
+            demodulator.flush();
+            assertEquals("ppm " + ppm, 1, frames.size());
+            assertArrayEquals("ppm " + ppm, payload, frames.get(0).msg);
+        }
+    }
+
+    @Test
+    public void shortLeadingSilence_decodes() {
+        // 帧前不足一个STFT窗口时没有纯噪声可以估计噪声底
+        byte[] payload = "hello world".getBytes();
+        double[] s = new BFSKModulator(FS, FD, TS).getRealSignal(FC, payload);
+        for (double noise : new double[]{0.05, 0.2}) {
+            for (int lead : new int[]{0, 100, 300, 400, 1000}) {
+                Random random = new Random(lead);
+                double[] x = new double[lead + s.length + 4800];
+                for (int i = 0; i < s.length; i++) x[lead + i] = 0.5 * s[i];
+                for (int i = 0; i < x.length; i++) x[i] += noise * random.nextGaussian();
+                BFSKDemodulator.DecodeResult rst = new BFSKDemodulator(FC, FD, TS).getData(x);
+                String name = "noise " + noise + " lead " + lead;
+                assertArrayEquals(name, payload, rst.msg);
+                assertEquals(name, 0, rst.error, 0);
+            }
+        }
+    }
+
+    @Test
+    public void channel_delayAndLength() {
+        double[] signal = new double[1000];
+        ChannelSimulator channel = new ChannelSimulator(Double.POSITIVE_INFINITY, new double[]{1}, 1000, 100, 200, 5);
+        double[] x = channel.apply(signal);
+        assertTrue(channel.delay() >= 100 && channel.delay() <= 200);
+        // 接收端时钟快1000ppm，1000个样本变成1001个
+        assertEquals(channel.delay() + 1000 + 4800, x.length);
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.androidaudio.signal;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * BFSK端到端的误码率测试
+ *
+ * 每一帧取随机负载(0x00 ~ 0xFE)，经过BFSKModulator.getRealSignal、ChannelSimulator和BFSKDemodulator.getData，
+ * 统计误比特率(BER)、误帧率(FER)和getData的吞吐量(每秒解调的接收样本数)。
+ * 解调结果比负载短时，缺少的字节按全部bit出错计算；只要结果与负载不完全相同就算一个误帧。
+ * 单精度模式下调制器输出float[]，接收到的信号也以float[]保存(Samples.of(float[]))，
+ * 信道本身仍按double计算，与双精度模式比较的只是收发两端的精度。
+ */
+public class BerHarness {
+    // 各测试共用的默认参数：采样率、载波频率、调制频偏和符号时间
+    static final double FS = 48000;
+    static final double FC = 6000, FD = 1000, TS = 0.025;
+
+    private final double fc, fd, symbolPeriod;
+    private final int payload;
+    private final boolean single;
+    private final Random random;
+
+    /**
+     * 一组测试的统计结果
+     */
+    public static class Report {
+        public int frames;
+        public int frameErrors;
+        public long bits;
+        public long bitErrors;
+        public long samples;    // 解调的接收样本数
+        public long nanos;      // getData的总耗时
+
+        public double ber() {
+            return bits == 0 ? 0 : (double) bitErrors / bits;
+        }
+
+        public double fer() {
+            return frames == 0 ? 0 : (double) frameErrors / frames;
+        }
+
+        /**
+         * @return 每秒解调的样本数
+         */
+        public double throughput() {
+            return nanos == 0 ? 0 : samples * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "frames %d  BER %.2e  FER %.3f  %.2f Msamples/s (%.0fx realtime)",
+                    frames, ber(), fer(), throughput() / 1e6, throughput() / FS);
+        }
+    }
+
+    /**
+     * @param payload 每帧负载的字节数
+     * @param seed    负载的随机数种子
+     */
+    public BerHarness(double fc, double fd, double symbolPeriod, int payload, long seed) {
+        this(fc, fd, symbolPeriod, payload, seed, false);
+    }
+
+    /**
+     * @param single 是否使用单精度的调制信号和接收信号
+     */
+    public BerHarness(double fc, double fd, double symbolPeriod, int payload, long seed, boolean single) {
+        this.fc = fc;
+        this.fd = fd;
+        this.symbolPeriod = symbolPeriod;
+        this.payload = payload;
+        this.single = single;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * 在给定信道上测试frames帧
+     */
+    public Report run(ChannelSimulator channel, int frames) {
+        BFSKModulator modulator = new BFSKModulator(FS, fd, symbolPeriod);
+        BFSKDemodulator demodulator = new BFSKDemodulator(fc, fd, symbolPeriod);
+        Report report = new Report();
+        byte[] data = new byte[payload];
+        for (int f = 0; f < frames; f++) {
+            // 不使用FEC时负载中不能有结束码0xFF
+            for (int i = 0; i < data.length; i++) data[i] = (byte) random.nextInt(0xFF);
+            Samples x;
+            if (single) {
+                float[] signal = modulator.getRealSignalFloat(fc, data);
+                x = Samples.of(to_float(channel.apply(to_double(signal))));
+            } else {
+                x = Samples.of(channel.apply(modulator.getRealSignal(fc, data)));
+            }
+
+            long begin = System.nanoTime();
+            BFSKDemodulator.DecodeResult rst = demodulator.getData(x);
+            report.nanos += System.nanoTime() - begin;
+            report.samples += x.length();
+
+            int errors = 0;
+            for (int i = 0; i < data.length; i++) {
+                errors += i < rst.msg.length ? Integer.bitCount((data[i] ^ rst.msg[i]) & 0xff) : Byte.SIZE;
+            }
+            report.frames++;
+            report.bits += data.length * Byte.SIZE;
+            report.bitErrors += errors;
+            if (errors > 0 || rst.msg.length != data.length) report.frameErrors++;
+        }
+        return report;
+    }
+
+    /**
+     * 用默认参数调制一帧，经过ChannelSimulator.awgn信道后的接收信号
+     */
+    static double[] received(Modulator modulator, byte[] data, double snrDb, long seed) {
+        return ChannelSimulator.awgn(snrDb, seed).apply(modulator.getRealSignal(FC, data));
+    }
+
+    /**
+     * 同上，调制器为默认参数的BFSKModulator
+     */
+    static double[] received(byte[] data, double snrDb, long seed) {
+        return received(new BFSKModulator(FS, FD, TS), data, snrDb, seed);
+    }
+
+    private static double[] to_double(float[] x) {
+        double[] y = new double[x.length];
+        for (int i = 0; i < x.length; i++) y[i] = x[i];
+        return y;
+    }
+
+    private static float[] to_float(double[] x) {
+        float[] y = new float[x.length];
+        for (int i = 0; i < x.length; i++) y[i] = (float) x[i];
+        return y;
+    }
+
+    /**
+     * 输出各信道条件下的结果，参数为每种条件的帧数(默认1000)
+     */
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        for (String line : table(frames)) System.out.println(line);
+    }
+
+    /**
+     * 各信道条件下双精度和单精度的结果，每种条件各一行，两者的负载和噪声完全相同
+     */
+    public static String[] table(int frames) {
+        String[] names = names();
+        String[] lines = new String[2 * names.length];
+        for (int p = 0; p < 2; p++) {
+            ChannelSimulator[] channels = channels();
+            for (int c = 0; c < channels.length; c++) {
+                Report report = new BerHarness(FC, FD, TS, 32, c, p == 1).run(channels[c], frames);
+                lines[2 * c + p] = String.format(Locale.ROOT, "%-18s %s %s", names[c], p == 1 ? "f32" : "f64", report);
+            }
+        }
+        return lines;
+    }
+
+    private static String[] names() {
+        return new String[]{"clean", "AWGN 10dB", "AWGN 3dB", "AWGN 0dB", "AWGN -3dB", "room 10dB", "room 10dB +200ppm", "AWGN 10dB no lead"};
+    }
+
+    private static ChannelSimulator[] channels() {
+        double[] room = ChannelSimulator.impulseResponse(FS, new double[]{0.001, 0.0035}, new double[]{-0.3, 0.2});
+        return new ChannelSimulator[]{
+                ChannelSimulator.awgn(Double.POSITIVE_INFINITY, 1),
+                ChannelSimulator.awgn(10, 2),
+                ChannelSimulator.awgn(3, 3),
+                ChannelSimulator.awgn(0, 4),
+                ChannelSimulator.awgn(-3, 5),
+                new ChannelSimulator(10, room, 0, 4800, 24000, 6),
+                new ChannelSimulator(10, room, 200, 4800, 24000, 7),
+                // 帧前没有噪声可以估计噪声底
+                new ChannelSimulator(10, new double[]{1}, 0, 0, 480, 8),
+        };
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.androidaudio.signal;
+
+import java.util.Random;
+
+/**
+ * 声学信道的离线模拟，供JVM单元测试使用
+ *
+ * 对调制器输出的实信号依次施加：多径(与冲激响应卷积)、收发两端的采样率偏差(三次插值重采样)、
+ * 随机延迟(帧前补静音，帧后补TAIL个样本)，最后在整段信号上叠加高斯白噪声。
+ * 信噪比按帧内信号的平均功率与噪声方差之比计算，噪声覆盖整个 0 ~ fs/2 频带。
+ */
+public class ChannelSimulator {
+    private static final int TAIL = 4800;   // 帧后的样本数
+
+    private final double snr;           // 线性信噪比，无穷大表示不加噪声
+    private final double[] impulse;
+    private final double ratio;         // 接收端每个样本对应的发送端样本数
+    private final int minDelay, maxDelay;
+    private final Random random;
+    private int delay;
+
+    /**
+     * @param snrDb    信噪比(dB)，Double.POSITIVE_INFINITY表示不加噪声
+     * @param impulse  多径信道的冲激响应，{1}表示直达
+     * @param ppm      接收端采样率相对发送端的偏差，正数表示接收端的时钟偏快(收到的信号变长)
+     * @param minDelay 帧前静音的最少样本数
+     * @param maxDelay 帧前静音的最多样本数
+     * @param seed     随机数种子，相同的种子得到相同的信道
+     */
+    public ChannelSimulator(double snrDb, double[] impulse, double ppm, int minDelay, int maxDelay, long seed) {
+        this.snr = Math.pow(10, snrDb / 10);
+        this.impulse = impulse;
+        this.ratio = 1 / (1 + ppm * 1e-6);
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * 只有直达路径和白噪声的信道，帧前有 0.1 ~ 0.5s 的静音可以估计噪声底，各测试的默认信道
+     */
+    public static ChannelSimulator awgn(double snrDb, long seed) {
+        return new ChannelSimulator(snrDb, new double[]{1}, 0, 4800, 24000, seed);
+    }
+
+    /**
+     * 依次拼接多段接收信号，例如一段录音中的多个帧
+     */
+    public static double[] concat(double[]... parts) {
+        int length = 0;
+        for (double[] part : parts) length += part.length;
+        double[] x = new double[length];
+        int off = 0;
+        for (double[] part : parts) {
+            System.arraycopy(part, 0, x, off, part.length);
+            off += part.length;
+        }
+        return x;
+    }
+
+    /**
+     * 直达信号加上若干条反射路径的冲激响应
+     * @param fs     采样率
+     * @param delays 各反射路径相对直达路径的时延(s)
+     * @param gains  各反射路径的增益
+     */
+    public static double[] impulseResponse(double fs, double[] delays, double[] gains) {
+        int length = 1;
+        for (double t : delays) length = Math.max(length, (int) Math.round(t * fs) + 1);
+        double[] h = new double[length];
+        h[0] = 1;
+        for (int i = 0; i < delays.length; i++) {
+            h[(int) Math.round(delays[i] * fs)] += gains[i];
+        }
+        return h;
+    }
+
+    /**
+     * @return 经过信道后接收到的信号
+     */
+    public double[] apply(double[] signal) {
+        double[] y = resample(convolve(signal, impulse), ratio);
+
+        double power = 0;
+        for (double v : y) power += v * v;
+        power /= Math.max(1, y.length);
+
+        delay = minDelay + random.nextInt(maxDelay - minDelay + 1);
+        double[] x = new double[delay + y.length + TAIL];
+        System.arraycopy(y, 0, x, delay, y.length);
+        if (!Double.isInfinite(snr)) {
+            double sigma = Math.sqrt(power / snr);
+            for (int i = 0; i < x.length; i++) {
+                x[i] += sigma * random.nextGaussian();
+            }
+        }
+        return x;
+    }
+
+    /**
+     * @return 上一次apply的帧起点在接收信号中的位置
+     */
+    public int delay() {
+        return delay;
+    }
+
+    private static double[] convolve(double[] x, double[] h) {
+        if (h.length == 1) {
+            double[] y = x.clone();
+            for (int i = 0; i < y.length; i++) y[i] *= h[0];
+            return y;
+        }
+        double[] y = new double[x.length + h.length - 1];
+        for (int k = 0; k < h.length; k++) {
+            if (h[k] == 0) continue;
+            for (int i = 0; i < x.length; i++) {
+                y[i + k] += h[k] * x[i];
+            }
+        }
+        return y;
+    }
+
+    // 第i个输出样本取输入在 i·ratio 处的值，用相邻4个样本做Catmull-Rom三次插值
+    private static double[] resample(double[] x, double ratio) {
+        if (ratio == 1) return x;
+        double[] y = new double[(int) ((x.length - 1) / ratio) + 1];
+        for (int i = 0; i < y.length; i++) {
+            double q = i * ratio;
+            int k = (int) q;
+            double t = q - k;
+            double p0 = at(x, k - 1), p1 = at(x, k), p2 = at(x, k + 1), p3 = at(x, k + 2);
+            y[i] = p1 + 0.5 * t * (p2 - p0 + t * (2 * p0 - 5 * p1 + 4 * p2 - p3 + t * (3 * (p1 - p2) + p3 - p0)));
+        }
+        return y;
+    }
+
+    private static double at(double[] x, int i) {
+        return i < 0 || i >= x.length ? 0 : x[i];
+    }
+}
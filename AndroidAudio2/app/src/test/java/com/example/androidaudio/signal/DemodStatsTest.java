@@ -0,0 +1,78 @@
+package com.example.androidaudio.signal;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static com.example.androidaudio.signal.BerHarness.FC;
+import static com.example.androidaudio.signal.BerHarness.FD;
+import static com.example.androidaudio.signal.BerHarness.FS;
+import static com.example.androidaudio.signal.BerHarness.TS;
+import static com.example.androidaudio.signal.BerHarness.received;
+import static org.junit.Assert.*;
+
+/**
+ * 解调统计(DemodMetrics/DemodStats)不影响解调结果，并且按阶段和帧计数
+ */
+public class DemodStatsTest {
+    @Test
+    public void getData_sameResultWithStats() {
+        byte[] data = new byte[16];
+        Random random = new Random(23);
+        for (int i = 0; i < data.length; i++) data[i] = (byte) random.nextInt(0xFF);
+        double[] x = received(data, 10, 1);
+
+        DemodStats stats = new DemodStats();
+        BFSKDemodulator.DecodeResult plain = new BFSKDemodulator(FC, FD, TS).getData(x);
+        BFSKDemodulator.DecodeResult traced = new BFSKDemodulator(FC, FD, TS, FecCodec.NONE, stats).getData(x);
+        assertArrayEquals(plain.msg, traced.msg);
+        assertArrayEquals(plain.bits, traced.bits);
+        assertEquals(plain.error, traced.error, 0);
+        assertNull(plain.code);
+
+        Map<String, Double> values = stats.snapshot();
+        for (DemodMetrics.Stage stage : DemodMetrics.Stage.values()) {
+            assertEquals(stage.name(), 1, values.get(stage.name().toLowerCase() + ".count"), 0);
+        }
+        assertEquals(1, values.get("frames"), 0);
+        assertEquals(0, values.get("check_errors"), 0);
+        // 全频带10dB，两个频点上的信噪比高得多
+        assertTrue(stats.toString(), values.get("snr.mean") > 20);
+    }
+
+    @Test
+    public void getFrames_countsFrames() {
+        byte[] data = "hello".getBytes();
+        double[] x = ChannelSimulator.concat(received(data, 20, 2), received(data, 20, 3));
+
+        DemodStats stats = new DemodStats();
+        assertEquals(2, new BFSKDemodulator(FC, FD, TS, FecCodec.NONE, stats).getFrames(Samples.of(x), 64).size());
+        assertEquals(2, stats.snapshot().get("frames"), 0);
+        assertEquals(2, stats.snapshot().get("frame.count"), 0);
+        // 信噪比由帧前的噪声底估计，与getData相同
+        assertTrue(stats.toString(), stats.snapshot().get("snr.mean") > 20);
+
+        stats.reset();
+        assertEquals(0, stats.snapshot().get("frames"), 0);
+    }
+
+    @Test
+    public void mfskGetFrames_reportsSnr() {
+        byte[] data = "hello".getBytes();
+        double[] x = received(new MFSKModulator(FS, 4, FD, TS), data, 10, 4);
+
+        DemodStats stats = new DemodStats();
+        assertEquals(1, new MFSKDemodulator(4, FC, FD, TS, FecCodec.NONE, stats).getFrames(Samples.of(x), 64).size());
+        assertEquals(1, stats.snapshot().get("frames"), 0);
+        assertTrue(stats.toString(), stats.snapshot().get("snr.mean") > 20);
+    }
+
+    @Test
+    public void codeString() {
+        BFSKDemodulator.DecodeResult rst = new BFSKDemodulator.DecodeResult(new byte[]{}, 0, new byte[]{0, 1, 1}, 0);
+        assertEquals("[0, 1, 1]", rst.codeString());
+        assertEquals("Preamble not found",
+                new BFSKDemodulator.DecodeResult(new byte[]{}, 1, "Preamble not found").codeString());
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.androidaudio.signal;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.example.androidaudio.signal.BerHarness.FC;
+import static com.example.androidaudio.signal.BerHarness.FD;
+import static com.example.androidaudio.signal.BerHarness.FS;
+import static com.example.androidaudio.signal.BerHarness.TS;
+import static com.example.androidaudio.signal.BerHarness.received;
+import static org.junit.Assert.*;
+
+/**
+ * 纠错编码(ReedSolomonCodec、ConvolutionalCodec)的编解码和纠错能力，以及FrameAssembler中使用FEC的帧格式
+ */
+public class FecCodecTest {
+    private static byte[] random_bytes(int len, long seed) {
+        byte[] data = new byte[len];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    // 编码后的字节按发送顺序(低位先发)展开成硬判决的软值
+    private static float[] soft(byte[] coded) {
+        float[] soft = new float[coded.length * Byte.SIZE];
+        for (int i = 0; i < soft.length; i++) {
+            soft[i] = (coded[i / Byte.SIZE] >> (i % Byte.SIZE)) & 1;
+        }
+        return soft;
+    }
+
+    private static byte[] encode(FecCodec codec, byte[] data) {
+        byte[] coded = new byte[codec.encodedLength(data.length)];
+        codec.encode(data, 0, data.length, coded, 0);
+        return coded;
+    }
+
+    @Test
+    public void reedSolomon_roundTrip() {
+        ReedSolomonCodec codec = new ReedSolomonCodec(ReedSolomonCodec.DEFAULT_PARITY);
+        // 247字节为一整块，之后需要分多块
+        for (int len : new int[]{1, 10, 100, 247, 248, 500, 1000}) {
+            byte[] data = random_bytes(len, len);
+            byte[] coded = encode(codec, data);
+            assertEquals(len + (len + 246) / 247 * 8, coded.length);
+            byte[] out = new byte[len];
+            assertEquals("len " + len, 0, codec.decode(soft(coded), 0, len, out, 0));
+            assertArrayEquals("len " + len, data, out);
+        }
+    }
+
+    @Test
+    public void reedSolomon_correctsFourByteErrorsPerBlock() {
+        ReedSolomonCodec codec = new ReedSolomonCodec(ReedSolomonCodec.DEFAULT_PARITY);
+        byte[] data = random_bytes(500, 1);
+        byte[] coded = encode(codec, data);
+        // 三块：247+8、247+8、6+8字节，每块的数据和校验字节中各错4个字节
+        Random random = new Random(2);
+        int[][] blocks = {{0, 255}, {255, 510}, {510, coded.length}};
+        for (int[] block : blocks) {
+            boolean[] hit = new boolean[coded.length];
+            for (int e = 0; e < 4; ) {
+                int i = block[0] + random.nextInt(block[1] - block[0]);
+                if (hit[i]) continue;
+                hit[i] = true;
+                coded[i] ^= 1 + random.nextInt(255);
+                e++;
+            }
+        }
+        byte[] out = new byte[data.length];
+        assertEquals(12, codec.decode(soft(coded), 0, data.length, out, 0));
+        assertArrayEquals(data, out);
+    }
+
+    @Test
+    public void reedSolomon_fiveByteErrorsNotCorrectable() {
+        ReedSolomonCodec codec = new ReedSolomonCodec(ReedSolomonCodec.DEFAULT_PARITY);
+        byte[] data = random_bytes(100, 3);
+        byte[] coded = encode(codec, data);
+        for (int i = 0; i < 5; i++) {
+            coded[i * 20 + 3] ^= 0x5a;
+        }
+        assertEquals(-1, codec.decode(soft(coded), 0, data.length, new byte[data.length], 0));
+    }
+
+    @Test
+    public void convolutional_roundTrip() {
+        ConvolutionalCodec codec = new ConvolutionalCodec();
+        for (int len : new int[]{1, 16, 100, 255}) {
+            byte[] data = random_bytes(len, len);
+            byte[] coded = encode(codec, data);
+            assertEquals(2 * len + 2, coded.length);
+            byte[] out = new byte[len];
+            assertEquals("len " + len, 0, codec.decode(soft(coded), 0, len, out, 0));
+            assertArrayEquals("len " + len, data, out);
+        }
+    }
+
+    @Test
+    public void convolutional_correctsScatteredBitFlips() {
+        ConvolutionalCodec codec = new ConvolutionalCodec();
+        byte[] data = random_bytes(64, 4);
+        float[] soft = soft(encode(codec, data));
+        // 每20个编码bit翻转一个，约5%的硬判决错误
+        int flips = 0;
+        for (int i = 7; i < soft.length; i += 20) {
+            soft[i] = 1 - soft[i];
+            flips++;
+        }
+        byte[] out = new byte[data.length];
+        assertEquals(flips, codec.decode(soft, 0, data.length, out, 0));
+        assertArrayEquals(data, out);
+    }
+
+    @Test
+    public void frameAssembler_fecFrameRoundTrip() {
+        for (String name : new String[]{"RS", "CONV"}) {
+            // 负载中的0xFF与结束码相同，使用FEC时帧长由长度字段决定
+            byte[] data = random_bytes(40, 5);
+            data[10] = (byte) 0xFF;
+            byte[] body = FrameAssembler.body(FecCodec.forName(name), data);
+            assertEquals(FrameAssembler.bodyLength(FecCodec.forName(name), data.length), body.length);
+
+            byte[] frame = new byte[FrameAssembler.PREAMBLE_C + body.length + FrameAssembler.EPILOGUE_C];
+            for (int i = 0; i < FrameAssembler.PREAMBLE_C; i++) frame[i] = FrameAssembler.PREAMBLE;
+            System.arraycopy(body, 0, frame, FrameAssembler.PREAMBLE_C, body.length);
+            frame[frame.length - 1] = FrameAssembler.EPILOGUE;
+
+            FrameAssembler assembler = new FrameAssembler(FrameAssembler.MAX_CODED_PAYLOAD, 2, FecCodec.forName(name));
+            for (int i = 0; i < frame.length * Byte.SIZE && !assembler.complete(); i++) {
+                assertTrue(name, assembler.push((frame[i / Byte.SIZE] >> (i % Byte.SIZE)) & 1));
+            }
+            assertTrue(name, assembler.complete());
+            BFSKDemodulator.DecodeResult rst = assembler.result(0);
+            assertArrayEquals(name, data, rst.msg);
+            assertEquals(name, 0, rst.error, 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void frameAssembler_rejectsLongCodedPayload() {
+        FrameAssembler.body(FecCodec.forName("RS"), new byte[FrameAssembler.MAX_CODED_PAYLOAD + 1]);
+    }
+
+    @Test
+    public void endToEnd_withFec() {
+        for (String name : new String[]{"RS", "CONV"}) {
+            byte[] data = random_bytes(32, 6);
+            data[0] = (byte) 0xFF;
+            double[] x = received(new BFSKModulator(FS, FD, TS, FecCodec.forName(name)), data, 3, 7);
+            BFSKDemodulator.DecodeResult rst = new BFSKDemodulator(FC, FD, TS, FecCodec.forName(name)).getData(x);
+            assertArrayEquals(name, data, rst.msg);
+            assertTrue(name, rst.error < 1);
+        }
+    }
+}
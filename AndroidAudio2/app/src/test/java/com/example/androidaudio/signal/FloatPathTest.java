@@ -0,0 +1,112 @@
+package com.example.androidaudio.signal;
+
+import com.example.androidaudio.audio.AudioUtils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.example.androidaudio.signal.BerHarness.FC;
+import static com.example.androidaudio.signal.BerHarness.FD;
+import static com.example.androidaudio.signal.BerHarness.FS;
+import static com.example.androidaudio.signal.BerHarness.TS;
+import static org.junit.Assert.*;
+
+/**
+ * 单精度的调制、PCM转换和频点检测与双精度版本一致
+ */
+public class FloatPathTest {
+    @Test
+    public void modulator_matchesDouble() {
+        byte[] data = "float path".getBytes();
+        BFSKModulator modulator = new BFSKModulator(FS, FD, TS);
+        double[] d = modulator.getRealSignal(FC, data);
+        float[] f = modulator.getRealSignalFloat(FC, data);
+        assertEquals(d.length, f.length);
+        for (int i = 0; i < d.length; i++) {
+            assertEquals(d[i], f[i], 1e-6);
+        }
+    }
+
+    @Test
+    public void toneDetector_matchesDouble() {
+        Random random = new Random(25);
+        ToneDetector detector = new ToneDetector(FS, new double[]{FC - FD, FC + FD}, 500);
+        double[] d = new double[500];
+        float[] f = new float[500];
+        for (int i = 0; i < d.length; i++) {
+            d[i] = 0.5 * Math.cos(2 * Math.PI * (FC - FD) * i / FS) + 0.1 * random.nextGaussian();
+            f[i] = (float) d[i];
+        }
+        double[] md = new double[2], mf = new double[2];
+        detector.magnitudes(d, 0, d.length, md);
+        detector.magnitudes(f, 0, f.length, mf);
+        for (int j = 0; j < 2; j++) {
+            assertEquals(md[j], mf[j], md[0] * 1e-6);
+        }
+        // 不足一个窗口时同样按实际长度取频点
+        assertEquals(detector.magnitude(d, 0, 300, 0), detector.magnitude(f, 0, 300, 0), md[0] * 1e-6);
+    }
+
+    @Test
+    public void pcm_matchesDouble() {
+        Random random = new Random(25);
+        float[] f = new float[1000];
+        double[] d = new double[f.length];
+        for (int i = 0; i < f.length; i++) {
+            f[i] = random.nextFloat() * 2 - 1;
+            d[i] = f[i];
+        }
+        byte[] pcm = AudioUtils.floatToPCM(f);
+        assertArrayEquals(AudioUtils.doubleToPCM(d), pcm);
+        double[] back = AudioUtils.PCMToDouble(pcm);
+        float[] backF = AudioUtils.PCMToFloat(pcm);
+        for (int i = 0; i < f.length; i++) {
+            assertEquals(back[i], backF[i], 1e-7);
+        }
+    }
+
+    @Test
+    public void samples_floatAndDouble() {
+        float[] f = {0.25f, -0.5f, 1, 0};
+        float[] dst = new float[2];
+        Samples.of(f).skip(1).get(1, dst, 0, 2);
+        assertArrayEquals(new float[]{1, 0}, dst, 0);
+        double[] dd = new double[2];
+        Samples.of(f).get(0, dd, 0, 2);
+        assertArrayEquals(new double[]{0.25, -0.5}, dd, 0);
+    }
+
+    @Test
+    public void spectrum_followsSamplePrecision() {
+        BFSKModulator modulator = new BFSKModulator(FS, FD, TS);
+        double[] d = modulator.getRealSignal(FC, "precision".getBytes());
+        float[] f = modulator.getRealSignalFloat(FC, "precision".getBytes());
+        Spectrum xd = new BFSKDemodulator(FC, FD, TS).spectrum(Samples.of(d));
+        Spectrum xf = new BFSKDemodulator(FC, FD, TS).spectrum(Samples.of(f));
+        ToneDetector detector = new ToneDetector(FS, new double[]{FC - FD, FC + FD}, 500);
+        // 每种精度的信号按自己的精度取窗口，结果与对应的ToneDetector完全相同
+        for (int t = 0; t < 10; t++) {
+            for (int j = 0; j < 2; j++) {
+                assertEquals(detector.magnitude(Arrays.copyOfRange(d, t * 100, t * 100 + 500), 0, 500, j),
+                        xd.get(j, t), 0);
+                assertEquals(detector.magnitude(Arrays.copyOfRange(f, t * 100, t * 100 + 500), 0, 500, j),
+                        xf.get(j, t), 0);
+            }
+        }
+    }
+
+    @Test
+    public void harness_sameErrorsAsDouble() {
+        double[] room = ChannelSimulator.impulseResponse(FS, new double[]{0.001, 0.0035}, new double[]{-0.3, 0.2});
+        for (double snr : new double[]{-3, 10}) {
+            BerHarness.Report d = new BerHarness(FC, FD, TS, 32, 1, false)
+                    .run(new ChannelSimulator(snr, room, 200, 4800, 24000, 2), 10);
+            BerHarness.Report f = new BerHarness(FC, FD, TS, 32, 1, true)
+                    .run(new ChannelSimulator(snr, room, 200, 4800, 24000, 2), 10);
+            assertEquals(d + " / " + f, d.bitErrors, f.bitErrors);
+            assertEquals(d + " / " + f, d.frameErrors, f.frameErrors);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.androidaudio.signal;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.example.androidaudio.signal.BerHarness.FC;
+import static com.example.androidaudio.signal.BerHarness.FD;
+import static com.example.androidaudio.signal.BerHarness.FS;
+import static com.example.androidaudio.signal.BerHarness.TS;
+import static com.example.androidaudio.signal.BerHarness.received;
+import static org.junit.Assert.*;
+
+/**
+ * M进制FSK的格雷码映射和 M = 4/8/16 的收发往返
+ */
+public class MFSKTest {
+    @Test
+    public void grayCode_adjacentTonesDifferInOneBit() {
+        for (int order : new int[]{4, 8, 16}) {
+            boolean[] used = new boolean[order];
+            for (int t = 0; t < order; t++) {
+                int v = MFSKModulator.valueOf(t);
+                assertTrue(v < order);
+                used[v] = true;
+                assertEquals(t, MFSKModulator.toneOf(v));
+                if (t > 0) {
+                    int diff = v ^ MFSKModulator.valueOf(t - 1);
+                    assertEquals("order " + order + " tone " + t, 1, Integer.bitCount(diff));
+                }
+            }
+            for (boolean u : used) assertTrue(u);
+        }
+    }
+
+    @Test
+    public void roundTrip() {
+        Random random = new Random(11);
+        for (int order : new int[]{4, 8, 16}) {
+            // 文本负载，不含0xFF
+            byte[] data = new byte[24];
+            for (int i = 0; i < data.length; i++) data[i] = (byte) (32 + random.nextInt(95));
+            double[] x = received(new MFSKModulator(FS, order, FD, TS), data, 10, order);
+            BFSKDemodulator.DecodeResult rst = new MFSKDemodulator(order, FC, FD, TS).getData(Samples.of(x));
+            assertArrayEquals("order " + order, data, rst.msg);
+            assertEquals("order " + order, 0, rst.error, 0);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.androidaudio.signal;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.example.androidaudio.signal.BerHarness.FC;
+import static com.example.androidaudio.signal.BerHarness.FD;
+import static com.example.androidaudio.signal.BerHarness.FS;
+import static org.junit.Assert.*;
+
+/**
+ * OFDM调制解调在模拟信道上的往返测试
+ */
+public class OFDMTest {
+    private final Random random = new Random(16);
+
+    private byte[] payload(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (32 + random.nextInt(95));
+        }
+        return data;
+    }
+
+    // 在静音/噪声中的offset处放入一帧
+    private double[] place(double[] frame, int offset, int tail, double noise) {
+        double[] x = new double[offset + frame.length + tail];
+        for (int i = 0; i < frame.length; i++) {
+            x[offset + i] = 0.5 * frame[i];
+        }
+        for (int i = 0; i < x.length; i++) {
+            x[i] += noise * random.nextGaussian();
+        }
+        return x;
+    }
+
+    @Test
+    public void baseband_matchesRealSignal() {
+        OFDMModulator modulator = new OFDMModulator(FS, FD);
+        byte[] data = payload(20);
+        double[] real = modulator.getRealSignal(FC, data);
+        org.apache.commons.math3.complex.Complex[] baseband = modulator.getBaseBand(data);
+        assertEquals(modulator.getSignalLength(data.length), real.length);
+        assertEquals(real.length, baseband.length);
+        for (int i = 0; i < real.length; i++) {
+            double w = 2 * Math.PI * FC * i / FS;
+            double expected = baseband[i].getReal() * Math.cos(w) - baseband[i].getImaginary() * Math.sin(w);
+            assertEquals(expected, real[i], 1e-12);
+            assertTrue(Math.abs(real[i]) <= 1);
+        }
+    }
+
+    @Test
+    public void openStream_matchesRealSignal() {
+        OFDMModulator modulator = new OFDMModulator(FS, FD);
+        byte[] data = payload(300);
+        double[] real = modulator.getRealSignal(FC, data);
+        double[] out = new double[real.length + 7];
+        assertEquals(real.length, modulator.getRealSignal(FC, data, out, 7));
+
+        // 读取块的长度与符号长度不对齐
+        Modulator.SampleStream stream = modulator.openStream(FC, data);
+        short[] block = new short[1000];
+        int pos = 0, n;
+        while ((n = stream.read(block, 0, block.length)) >= 0) {
+            for (int i = 0; i < n; i++, pos++) {
+                assertEquals(real[pos], out[7 + pos], 0);
+                assertEquals((short) Math.round(real[pos] * Short.MAX_VALUE), block[i]);
+            }
+        }
+        assertEquals(real.length, pos);
+    }
+
+    @Test
+    public void roundTrip_noisyChannel() {
+        OFDMModulator modulator = new OFDMModulator(FS, FD);
+        byte[] data = payload(100);
+        double[] x = place(modulator.getRealSignal(FC, data), 12345, 5000, 0.05);
+
+        BFSKDemodulator.DecodeResult rst = new OFDMDemodulator(FC, FD).getData(Samples.of(x));
+        assertArrayEquals(data, rst.msg);
+        assertEquals(0, rst.error, 0);
+        assertEquals(12345, rst.offset);
+    }
+
+    @Test
+    public void roundTrip_multipathAndClockDrift() {
+        OFDMModulator modulator = new OFDMModulator(FS, FD);
+        byte[] data = payload(60);
+        double[] x = place(modulator.getRealSignal(FC, data), 4000, 5000, 0);
+
+        // 1ms和3ms的两条反射路径
+        double[] y = x.clone();
+        for (int i = 48; i < x.length; i++) y[i] -= 0.3 * x[i - 48];
+        for (int i = 144; i < x.length; i++) y[i] += 0.5 * x[i - 144];
+        // 收发两端采样率相差40ppm
+        double ratio = 1 + 40e-6;
+        double[] z = new double[(int) ((y.length - 1) / ratio)];
+        for (int i = 0; i < z.length; i++) {
+            double q = i * ratio;
+            int k = (int) q;
+            z[i] = y[k] + (y[k + 1] - y[k]) * (q - k) + 0.01 * random.nextGaussian();
+        }
+
+        BFSKDemodulator.DecodeResult rst = new OFDMDemodulator(FC, FD).getData(Samples.of(z));
+        assertArrayEquals(data, rst.msg);
+        assertEquals(0, rst.error, 0);
+    }
+
+    @Test
+    public void getFrames_findsEveryFrame() {
+        OFDMModulator modulator = new OFDMModulator(FS, FD);
+        byte[][] data = {payload(1), payload(37), payload(200)};
+        int gap = 3000;
+        int length = gap;
+        for (byte[] d : data) length += modulator.getSignalLength(d.length) + gap;
+        double[] x = new double[length];
+        int[] offsets = new int[data.length];
+        int p = gap;
+        for (int f = 0; f < data.length; f++) {
+            offsets[f] = p;
+            p += modulator.getRealSignal(FC, data[f], x, p) + gap;
+        }
+
+        List<BFSKDemodulator.DecodeResult> frames = new OFDMDemodulator(FC, FD).getFrames(Samples.of(x), 256);
+        assertEquals(data.length, frames.size());
+        for (int f = 0; f < data.length; f++) {
+            assertArrayEquals(data[f], frames.get(f).msg);
+            assertEquals(offsets[f], frames.get(f).offset);
+        }
+    }
+
+    @Test
+    public void noiseOnly_noFrame() {
+        double[] x = place(new double[0], 0, 48000, 0.1);
+        assertTrue(new OFDMDemodulator(FC, FD).getFrames(Samples.of(x), 256).isEmpty());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.androidaudio.signal;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.example.androidaudio.signal.BerHarness.FS;
+import static org.junit.Assert.*;
+
+/**
+ * Spectrogram(实数FFT拆分)的结果与同一段加窗样本的逐点DFT一致
+ */
+public class SpectrogramTest {
+    private static final int SIZE = 256, HOP = 100;
+
+    // 第t帧加窗后的逐点DFT幅值 |X[k]|，k = 0..size/2
+    private static double[] dft(double[] x, int t, double a) {
+        double[] w = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            w[i] = x[t * HOP + i] * (a - (1 - a) * Math.cos(2 * Math.PI * i / SIZE));
+        }
+        double[] mag = new double[SIZE / 2 + 1];
+        for (int k = 0; k < mag.length; k++) {
+            double re = 0, im = 0;
+            for (int i = 0; i < SIZE; i++) {
+                re += w[i] * Math.cos(2 * Math.PI * k * i / SIZE);
+                im -= w[i] * Math.sin(2 * Math.PI * k * i / SIZE);
+            }
+            mag[k] = Math.sqrt(re * re + im * im);
+        }
+        return mag;
+    }
+
+    @Test
+    public void compute_matchesNaiveDft() {
+        Random random = new Random(14);
+        double[] x = new double[4000];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = 0.5 * Math.cos(2 * Math.PI * 5000 * i / FS + 0.3) + 0.1 * random.nextGaussian();
+        }
+        Spectrogram.Window[] windows = {Spectrogram.Window.RECTANGULAR, Spectrogram.Window.HANN, Spectrogram.Window.HAMMING};
+        double[] a = {1, 0.5, 0.54};
+        for (int w = 0; w < windows.length; w++) {
+            Spectrogram spectrogram = new Spectrogram(FS, SIZE, HOP, windows[w]);
+            assertEquals(SIZE / 2 + 1, spectrogram.bins());
+            assertEquals((x.length - SIZE) / HOP + 1, spectrogram.frames(x.length));
+            float[] out = spectrogram.compute(Samples.of(x));
+            // 第一帧、中间和最后一帧
+            for (int t : new int[]{0, 7, spectrogram.frames(x.length) - 1}) {
+                double[] expected = dft(x, t, a[w]);
+                for (int k = 0; k < expected.length; k++) {
+                    assertEquals(windows[w] + " frame " + t + " bin " + k,
+                            expected[k], out[t * spectrogram.bins() + k], 1e-4 * expected[spectrogram.bin(5000)]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compute_rangeMatchesWhole() {
+        Random random = new Random(15);
+        double[] x = new double[2000];
+        for (int i = 0; i < x.length; i++) x[i] = random.nextGaussian();
+        Spectrogram spectrogram = new Spectrogram(FS, SIZE, HOP, Spectrogram.Window.HANN);
+        float[] whole = spectrogram.compute(Samples.of(x));
+        float[] part = new float[2 * spectrogram.bins()];
+        spectrogram.compute(Samples.of(x), 5, 7, part, 0);
+        for (int i = 0; i < part.length; i++) {
+            assertEquals(whole[5 * spectrogram.bins() + i], part[i], 0);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.androidaudio.signal;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static com.example.androidaudio.signal.BerHarness.FC;
+import static com.example.androidaudio.signal.BerHarness.FD;
+import static com.example.androidaudio.signal.BerHarness.TS;
+import static com.example.androidaudio.signal.BerHarness.received;
+import static org.junit.Assert.*;
+
+/**
+ * 频谱缓存与复用频谱的解调结果
+ */
+public class SpectrumCacheTest {
+    private static double[] signal(String text, long seed) {
+        return received(text.getBytes(), 10, seed);
+    }
+
+    @Test
+    public void getData_sameResultWithSpectrum() {
+        Samples x = Samples.of(signal("spectrum cache", 1));
+        BFSKDemodulator demodulator = new BFSKDemodulator(FC, FD, TS);
+        BFSKDemodulator.DecodeResult direct = demodulator.getData(x);
+        BFSKDemodulator.DecodeResult cached = demodulator.getData(x, demodulator.spectrum(x));
+        assertEquals("spectrum cache", new String(cached.msg, 0, 14));
+        assertArrayEquals(direct.msg, cached.msg);
+        assertArrayEquals(direct.bits, cached.bits);
+    }
+
+    @Test
+    public void getFrames_sameResultWithSpectrum() {
+        Samples s = Samples.of(ChannelSimulator.concat(signal("first", 2), signal("second", 3)));
+        BFSKDemodulator demodulator = new BFSKDemodulator(FC, FD, TS);
+        List<BFSKDemodulator.DecodeResult> frames = demodulator.getFrames(s, demodulator.spectrum(s), 64);
+        assertEquals(2, frames.size());
+        assertEquals("first", new String(frames.get(0).msg));
+        assertEquals("second", new String(frames.get(1).msg));
+    }
+
+    @Test
+    public void get_reusedAcrossSymbolPeriods() {
+        Samples x = Samples.of(signal("reuse", 4));
+        SpectrumCache cache = new SpectrumCache(1 << 20);
+        Spectrum X = cache.get("a", new BFSKDemodulator(FC, FD, TS), x);
+        assertSame(X, cache.get("a", new BFSKDemodulator(FC, FD, 0.05), x));
+        assertEquals(1, cache.hits());
+        // 频率或录音不同时重新计算
+        assertNotSame(X, cache.get("a", new BFSKDemodulator(FC + 500, FD, TS), x));
+        assertNotSame(X, cache.get("b", new BFSKDemodulator(FC, FD, TS), x));
+        assertEquals(3, cache.misses());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsed() {
+        Samples x = Samples.of(new double[48000]);
+        BFSKDemodulator demodulator = new BFSKDemodulator(FC, FD, TS);
+        long size = 2L * Double.BYTES * demodulator.spectrum(x).length();
+        SpectrumCache cache = new SpectrumCache(2 * size);
+        cache.get("a", demodulator, x);
+        cache.get("b", demodulator, x);
+        cache.get("a", demodulator, x);
+        cache.get("c", demodulator, x);    // 淘汰b
+        assertEquals(2, cache.size());
+        assertEquals(2 * size, cache.bytes());
+        cache.get("a", demodulator, x);
+        cache.get("b", demodulator, x);
+        assertEquals(2, cache.hits());
+        assertEquals(4, cache.misses());
+
+        // 超过预算的频谱不缓存
+        SpectrumCache small = new SpectrumCache(size - 1);
+        small.get("a", demodulator, x);
+        assertEquals(0, small.size());
+    }
+
+    @Test
+    public void source_changesWithFile() throws IOException {
+        File file = File.createTempFile("spectrum", ".pcm");
+        try {
+            String before = SpectrumCache.source(file);
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(new byte[100]);
+            }
+            assertNotEquals(before, SpectrumCache.source(file));
+        } finally {
+            file.delete();
+        }
+    }
+}
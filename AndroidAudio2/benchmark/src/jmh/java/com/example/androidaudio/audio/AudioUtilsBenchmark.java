@@ -0,0 +1,82 @@
+package com.example.androidaudio.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PCM与double互转和PCM转WAV的吞吐量，samples为样本数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AudioUtilsBenchmark {
+    @Param({"4800", "480000"})
+    public int samples;
+
+    private double[] audio;
+    private float[] audioFloat;
+    private byte[] pcm;
+    private File pcmFile, wavFile;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(22);
+        audio = new double[samples];
+        for (int i = 0; i < samples; i++) {
+            audio[i] = random.nextDouble() * 2 - 1;
+        }
+        pcm = AudioUtils.doubleToPCM(audio);
+        audioFloat = AudioUtils.PCMToFloat(pcm);
+
+        pcmFile = File.createTempFile("bench", ".pcm");
+        wavFile = File.createTempFile("bench", ".wav");
+        try (FileOutputStream out = new FileOutputStream(pcmFile)) {
+            out.write(pcm);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pcmFile.delete();
+        wavFile.delete();
+    }
+
+    @Benchmark
+    public byte[] doubleToPCM() {
+        return AudioUtils.doubleToPCM(audio);
+    }
+
+    @Benchmark
+    public double[] PCMToDouble() {
+        return AudioUtils.PCMToDouble(pcm);
+    }
+
+    @Benchmark
+    public byte[] floatToPCM() {
+        return AudioUtils.floatToPCM(audioFloat);
+    }
+
+    @Benchmark
+    public float[] PCMToFloat() {
+        return AudioUtils.PCMToFloat(pcm);
+    }
+
+    @Benchmark
+    public long PCMToWAV() {
+        AudioUtils.PCMToWAV(pcmFile, wavFile, 1, AudioUtils.SAMPLE_RATE, 16);
+        return wavFile.length();
+    }
+}
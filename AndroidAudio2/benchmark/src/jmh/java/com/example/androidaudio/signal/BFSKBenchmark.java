@@ -0,0 +1,115 @@
+package com.example.androidaudio.signal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BFSK调制和解调的吞吐量，bytes为每帧负载的字节数
+ *
+ * 解调的输入是前后各补0.5s静音、叠加弱高斯噪声的一帧信号，与实际录音的长度比例相近。
+ * getRealSignalMathCos是逐样本调用Math.cos的参照实现，与getRealSignalInto比较即Oscillator查表的加速比。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BFSKBenchmark {
+    private static final double FS = 48000;
+    private static final double FC = 6000, FD = 1000, TS = 0.025;
+
+    @Param({"16", "128", "512"})
+    public int bytes;
+
+    private BFSKModulator modulator;
+    private BFSKDemodulator demodulator;
+    private byte[] data;
+    private byte[] frame;       // 前导码 + 负载 + 结束码
+    private double[] out;
+    private float[] outFloat;
+    private double[] signal;
+    private float[] signalFloat;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(22);
+        modulator = new BFSKModulator(FS, FD, TS);
+        demodulator = new BFSKDemodulator(FC, FD, TS);
+        data = new byte[bytes];
+        // 不含结束码0xFF
+        for (int i = 0; i < data.length; i++) data[i] = (byte) random.nextInt(0xFF);
+        frame = new byte[data.length + 3];
+        frame[0] = frame[1] = 0b01010101;
+        System.arraycopy(data, 0, frame, 2, data.length);
+        frame[frame.length - 1] = (byte) 0xFF;
+        out = new double[modulator.getSignalLength(bytes)];
+        outFloat = new float[out.length];
+
+        // 帧前后各0.5s，加上少量噪声作为接收信号
+        double[] modulated = modulator.getRealSignal(FC, data);
+        int pad = (int) (FS / 2);
+        signal = new double[modulated.length + 2 * pad];
+        System.arraycopy(modulated, 0, signal, pad, modulated.length);
+        for (int i = 0; i < signal.length; i++) {
+            signal[i] += 0.01 * random.nextGaussian();
+        }
+        signalFloat = new float[signal.length];
+        for (int i = 0; i < signal.length; i++) {
+            signalFloat[i] = (float) signal[i];
+        }
+    }
+
+    @Benchmark
+    public double[] getRealSignal() {
+        return modulator.getRealSignal(FC, data);
+    }
+
+    // 写入调用方的缓冲区，不分配内存
+    @Benchmark
+    public double[] getRealSignalInto() {
+        modulator.getRealSignal(FC, data, out, 0);
+        return out;
+    }
+
+    // 参照：与getRealSignalInto相同的相位连续信号，每个样本调用一次Math.cos
+    @Benchmark
+    public double[] getRealSignalMathCos() {
+        int samplesPerSymbol = (int) Math.round(TS * FS);
+        double phase = 0;
+        int k = 0;
+        for (int i = 0; i < frame.length * Byte.SIZE; i++) {
+            int b = (frame[i / Byte.SIZE] >> (i % Byte.SIZE)) & 1;
+            double inc = 2 * Math.PI * (b == 1 ? FC + FD : FC - FD) / FS;
+            for (int j = 0; j < samplesPerSymbol; j++) {
+                out[k++] = Math.cos(phase);
+                phase += inc;
+            }
+            phase %= 2 * Math.PI;
+        }
+        return out;
+    }
+
+    @Benchmark
+    public float[] getRealSignalFloat() {
+        modulator.getRealSignal(FC, data, outFloat, 0);
+        return outFloat;
+    }
+
+    @Benchmark
+    public BFSKDemodulator.DecodeResult getData() {
+        return demodulator.getData(signal);
+    }
+
+    // 接收信号以float[]保存
+    @Benchmark
+    public BFSKDemodulator.DecodeResult getDataFloat() {
+        return demodulator.getData(Samples.of(signalFloat));
+    }
+}